@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import dev.jeka.core.api.file.JkPathTree;
+import dev.jeka.core.api.system.JkLog;
+import dev.jeka.core.api.utils.JkUtilsPath;
+
+import mappings.UserCache;
+
+//Keeps built artifacts in one place per machine, keyed by what went into them, so each is only ever built once however many checkouts want it
+public class ArtifactStore {
+	private final Path root;
+
+	public static ArtifactStore inUserHome() {
+		return new ArtifactStore(UserCache.resolve("artifacts"));
+	}
+
+	public ArtifactStore(Path root) {
+		this.root = root;
+	}
+
+	//Gives the stored artifact for the key, building it first if nothing else has (or is waiting for whoever is to finish)
+	public Path obtain(String key, String name, Consumer<Path> builder) {
+		Path stored = root.resolve(key).resolve(name);
+		if (Files.isRegularFile(stored)) {
+			markUsed(stored.getParent());
+			return stored;
+		}
+
+		FileLocks.run(root.resolve(key + ".lock"), key, () -> {
+			if (Files.isRegularFile(stored)) return; //Built whilst waiting for the lock
+			JkUtilsPath.createDirectories(stored.getParent());
+
+			//Anything interrupted leaves only its own temporary file behind, never a partial artifact
+			Path temp = stored.resolveSibling(name + '.' + ManagementFactory.getRuntimeMXBean().getName() + ".tmp");
+			try {
+				builder.accept(temp);
+				Files.move(temp, stored, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error storing " + name + " as " + key, e);
+			} finally {
+				JkUtilsPath.deleteIfExists(temp);
+			}
+		});
+
+		markUsed(stored.getParent());
+		return stored;
+	}
+
+	//The key's directory is touched rather than the artifact, as the artifact is (hopefully) hard linked into a checkout where its time would show
+	private static void markUsed(Path directory) {
+		try {
+			Files.setLastModifiedTime(directory, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			JkLog.trace("Unable to mark " + directory + " as used: " + e);
+		}
+	}
+
+	//Deletes every artifact not obtained within the given time, returning how many went, so versions nothing uses any more don't build up forever
+	//Checkouts with hard links or copies keep their files, any with a symbolic link need setup running again to rebuild it
+	public int prune(long maxAge, TimeUnit unit) {
+		if (Files.notExists(root)) return 0;
+		long cutoff = System.currentTimeMillis() - unit.toMillis(maxAge);
+		int pruned = 0;
+
+		try (Stream<Path> keys = Files.list(root)) {
+			for (Path directory : (Iterable<Path>) keys.filter(Files::isDirectory)::iterator) {
+				if (lastUsed(directory) >= cutoff) continue;
+				String key = directory.getFileName().toString();
+
+				//The lock file itself is left, deleting it could let two processes each lock a different file for the same key
+				boolean deleted = FileLocks.supply(root.resolve(key + ".lock"), key, () -> {
+					if (lastUsed(directory) >= cutoff) return false; //Obtained whilst waiting for the lock
+
+					JkPathTree.of(directory).deleteContent();
+					JkUtilsPath.deleteIfExists(directory);
+					return true;
+				});
+				if (deleted) pruned++;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error listing stored artifacts in " + root, e);
+		}
+
+		return pruned;
+	}
+
+	private static long lastUsed(Path directory) {
+		try {
+			return Files.getLastModifiedTime(directory).toMillis();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading last use of " + directory, e);
+		}
+	}
+
+	//Puts the stored artifact at the given path, sharing the file itself wherever possible
+	public static void link(Path stored, Path to) {
+		JkUtilsPath.deleteIfExists(to);
+		JkUtilsPath.createDirectories(to.getParent());
+
+		try {
+			Files.createLink(to, stored);
+			return;
+		} catch (IOException | UnsupportedOperationException e) {
+			JkLog.trace("Unable to hard link " + to + " to " + stored + ": " + e);
+		}
+
+		try {
+			Files.createSymbolicLink(to, stored.toAbsolutePath());
+			return;
+		} catch (IOException | UnsupportedOperationException e) {
+			JkLog.trace("Unable to symbolically link " + to + " to " + stored + ": " + e);
+		}
+
+		JkUtilsPath.copy(stored, to, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	//Runs the task with the given directory held for this process alone, waiting for whoever else might have it first
+	public static void inWorkspace(Path directory, Runnable task) {
+		//Kept next to the directory rather than in it, so the lock itself doesn't look like a change to anything watching
+		FileLocks.run(directory.resolveSibling(directory.getFileName() + ".lock"), directory.toString(), task);
+	}
+}
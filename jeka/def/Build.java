@@ -1,29 +1,63 @@
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
 
 import org.cadixdev.lorenz.MappingSet;
-import org.cadixdev.lorenz.impl.model.MethodMappingImpl;
-import org.cadixdev.lorenz.model.MethodMapping;
-import org.cadixdev.lorenz.model.MethodParameterMapping;
-import org.cadixdev.mercury.Mercury;
-import org.cadixdev.mercury.remapper.MercuryRemapper;
 
 import dev.jeka.core.api.file.JkPathMatcher;
 import dev.jeka.core.api.file.JkPathTree;
@@ -33,17 +67,25 @@ import dev.jeka.core.api.system.JkLog;
 import dev.jeka.core.api.system.JkLog.Verbosity;
 import dev.jeka.core.api.utils.JkUtilsPath;
 import dev.jeka.core.api.utils.JkUtilsString;
-import dev.jeka.core.api.utils.JkUtilsXml;
 import dev.jeka.core.tool.JkCommands;
 import dev.jeka.core.tool.JkConstants;
 import dev.jeka.core.tool.JkDoc;
 import dev.jeka.core.tool.JkImport;
 import dev.jeka.core.tool.JkImportRepo;
 
-import net.fabricmc.tinyremapper.IMappingProvider.MappingAcceptor;
-import net.fabricmc.tinyremapper.IMappingProvider.Member;
+import net.fabricmc.tinyremapper.IMappingProvider;
 import net.fabricmc.tinyremapper.TinyUtils;
 
+import mappings.ClassTable;
+import mappings.Hashing;
+import mappings.LorenzLoader;
+import mappings.MCPMerger;
+import mappings.MappingDiff;
+import mappings.MappingDiff.Kind;
+import mappings.MappingQueryServer;
+import mappings.Namespace;
+import mappings.TableMappingProvider;
+
 @JkImport("com.github.Chocohead:Mercury:1cc277b") //net.fabricmc:tiny-remapper:0.2.1.62 and org.cadixdev:mercury:0.1.1.fabric-SNAPSHOT
 @JkImportRepo("https://jitpack.io") //From https://maven.fabricmc.net
 class Build extends JkCommands {
@@ -51,75 +93,535 @@ class Build extends JkCommands {
 	private static final String FORGE_PATH = "**/.gradle/caches/forge_gradle/minecraft_user_repo/net/minecraftforge/forge/*_mapped_*/forge-*_mapped_*-recomp.jar";
 	@JkDoc("Avoid increasing the logging level from mute when running Gradle")
 	public boolean quietGradle; //Run with -quietGradle=true
+	@JkDoc("How many Forge versions to remap the sources of at once")
+	public int parallelVersions = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+	@JkDoc("How long in milliseconds watch waits for changes to stop before re-running anything")
+	public int watchDebounce = 500;
+	@JkDoc("Merged mapping file for diffMappings to compare from")
+	public String diffFrom;
+	@JkDoc("Merged mapping file for diffMappings to compare to")
+	public String diffTo;
+	@JkDoc("Namespace diffMappings matches entries by, should be stable between the two files")
+	public String diffKey = "intermediary";
+	@JkDoc("Jar for remapJar to remap")
+	public String remapInput;
+	@JkDoc("Where remapJar should write the remapped jar to")
+	public String remapOutput;
+	@JkDoc("Merged mapping file for remapJar to use")
+	public String remapMappings;
+	@JkDoc("Namespace remapJar remaps from")
+	public String remapFrom = "srg";
+	@JkDoc("Namespace remapJar remaps to")
+	public String remapTo = "named";
+	@JkDoc("Jars the remapJar input needs for inheritance, separated by the platform's path separator")
+	public String remapClasspath;
+	@JkDoc("Store the remapped sources without compressing them, quicker to write and for an IDE to read locally")
+	public boolean storeSources;
+	@JkDoc("Always run Gradle for Fabric, rather than restoring its results from the cache when nothing has changed")
+	public boolean noIncludesCache;
+	@JkDoc("Directory to share remapped sources between checkouts from, defaults to one in the user's home")
+	public String artifactStore;
+	@JkDoc("How many days a remapped artifact can go unused before setup (or pruneArtifacts) deletes it from the store, or 0 to keep them all")
+	public int artifactMaxAge = 60;
+	@JkDoc("Point the IDE at a directory of sources remapped as classes are asked for, rather than remapping them all up front")
+	public boolean lazySources;
+	@JkDoc("Named class for remapSource to remap, like net/minecraft/client/MinecraftClient")
+	public String sourceClass;
+	@JkDoc("How many separate JVMs to remap sources in, or 0 to remap them in this one")
+	public int remapWorkers;
+	@JkDoc("How many sources jars each remap worker does before being replaced, to stop leaked memory building up")
+	public int remapWorkerJobs = 2;
+	@JkDoc("How many minutes a remap worker can take over a sources jar before it is killed, or 0 to wait as long as it takes")
+	public int remapWorkerTimeout = 30;
+	@JkDoc("JVM options for each remap worker, separated by spaces")
+	public String remapWorkerOptions = "-Xmx3G -XX:+UseParallelGC";
+	@JkDoc("Merged mapping file for queryMappings to answer from")
+	public String queryFile;
+	@JkDoc("Local port for queryMappings and serveSources to listen on, or 0 to answer over standard in/out instead")
+	public int queryPort;
+
+	private enum Stage {
+		FABRIC, FORGE, SOURCES;
+	}
 
 	@Override
 	protected void setup() {
+		runStages(getBaseDir().resolve(SETUP_DIR), EnumSet.noneOf(Stage.class));
+	}
+
+	@JkDoc("Run setup, then keep watching the settings and generated files to re-run only the stages changes invalidate")
+	public void watch() {
 		Path setupDir = getBaseDir().resolve(SETUP_DIR);
+		runStages(setupDir, EnumSet.noneOf(Stage.class));
+		Map<Path, String> written = snapshot(setupDir);
+
+		try (WatchService watcher = setupDir.getFileSystem().newWatchService()) {
+			Map<WatchKey, Path> keys = new HashMap<>();
+			registerAll(watcher, keys, setupDir.resolve("Fabric"));
+			registerAll(watcher, keys, setupDir.resolve("Forge"));
+			for (String output : new String[] {"Merge", "Merge/includes", "Merge/mappings", "Merge/remapped"}) {
+				Path dir = setupDir.resolve(output);
+				if (Files.isDirectory(dir)) keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+			}
+
+			JkLog.info("Watching for changes in " + setupDir);
+			while (true) {
+				Set<Stage> stages = EnumSet.noneOf(Stage.class);
+
+				//Keep collecting changes until things go quiet, so saving a handful of files only triggers a single run
+				for (WatchKey key = watcher.take(); key != null; key = watcher.poll(watchDebounce, TimeUnit.MILLISECONDS)) {
+					Path dir = keys.get(key);
+
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == OVERFLOW) {
+							stages.add(Stage.FORGE); //Lost track of what happened, assume the worst short of rebuilding Fabric
+							continue;
+						}
+
+						Path changed = dir.resolve((Path) event.context());
+						//Events for what a run wrote can turn up well after it has finished, so anything still as it was left is no change
+						if (Objects.equals(written.get(changed), stateOf(changed))) continue;
+
+						if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed) && !changed.startsWith(setupDir.resolve("Merge"))) {
+							registerAll(watcher, keys, changed);
+						}
+
+						Stage stage = stageFor(setupDir, changed);
+						if (stage != null) {
+							JkLog.trace("Change to " + changed + " invalidates " + stage);
+							stages.add(stage);
+						}
+					}
+
+					if (!key.reset()) keys.remove(key);
+				}
+
+				if (stages.isEmpty()) continue;
+				JkLog.info("Re-running setup for " + stages);
+
+				try {
+					runStages(setupDir, stages);
+				} catch (RuntimeException e) {
+					JkLog.error("Setup failed: " + e); //Keep watching, the next save might fix it
+				}
+				written = snapshot(setupDir);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error watching " + setupDir, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@JkDoc("Print what was added, removed or renamed between the -diffFrom and -diffTo merged mapping files")
+	public void diffMappings() {
+		if (diffFrom == null || diffTo == null) throw new IllegalArgumentException("Need both -diffFrom and -diffTo to compare");
+
+		int[] counts = new int[3];
+		MappingDiff.diff(Paths.get(diffFrom), Paths.get(diffTo), Namespace.byTinyName(diffKey), new MappingDiff.Listener() {
+			private String describe(String owner, String key) {
+				return owner != null ? owner + ' ' + key : key;
+			}
+
+			@Override
+			public void added(Kind kind, String owner, String key) {
+				JkLog.info("+ " + kind + ' ' + describe(owner, key));
+				counts[0]++;
+			}
+
+			@Override
+			public void removed(Kind kind, String owner, String key) {
+				JkLog.info("- " + kind + ' ' + describe(owner, key));
+				counts[1]++;
+			}
+
+			@Override
+			public void renamed(Kind kind, Namespace namespace, String owner, String key, String from, String to) {
+				JkLog.info("~ " + kind + ' ' + describe(owner, key) + " (" + namespace.tinyName + "): " + from + " -> " + to);
+				counts[2]++;
+			}
+		});
+
+		JkLog.info(counts[0] + " added, " + counts[1] + " removed, " + counts[2] + " renamed");
+	}
+
+	@JkDoc("Remap the -remapInput jar from -remapFrom to -remapTo using the merged -remapMappings, without a Gradle run")
+	public void remapJar() {
+		if (remapInput == null || remapOutput == null || remapMappings == null) {
+			throw new IllegalArgumentException("Need -remapInput, -remapOutput and -remapMappings to remap");
+		}
+
+		List<Path> classpath = new ArrayList<>();
+		if (remapClasspath != null) {
+			for (String entry : remapClasspath.split(File.pathSeparator)) {
+				if (!entry.isEmpty()) classpath.add(Paths.get(entry));
+			}
+		}
+
+		JkLog.startTask("Remapping " + remapInput);
+		JarRemapper.remap(Paths.get(remapInput), Paths.get(remapOutput), mappingsFrom(Paths.get(remapMappings), remapFrom, remapTo),
+				classpath, Runtime.getRuntime().availableProcessors());
+		JkLog.endTask();
+	}
+
+	@JkDoc("Remap the -sourceClass into the lazy sources of each version which has it, if it isn't already")
+	public void remapSource() {
+		if (sourceClass == null) throw new IllegalArgumentException("Need a -sourceClass to remap");
+
+		for (Path sources : lazySourceDirs()) {
+			Path remapped = LazySources.open(sources).remap(sourceClass);
+
+			if (remapped != null) {
+				JkLog.info(sources.getFileName() + ": " + remapped);
+			} else {
+				JkLog.info(sources.getFileName() + ": no sources for " + sourceClass);
+			}
+		}
+	}
+
+	@JkDoc("Remap everything in the lazy sources not yet asked for, so nothing is left to do when the IDE wants it")
+	public void remapAllSources() {
+		for (Path sources : lazySourceDirs()) {
+			JkLog.startTask("Remapping remaining sources for " + sources.getFileName());
+			int added = LazySources.open(sources).remapAll();
+			JkLog.endTask();
+			JkLog.info("Added " + added + " remapped files to " + sources);
+		}
+	}
+
+	@JkDoc("Keep the lazy sources' mappings loaded, remapping each named class asked for until stopped rather than starting up for every one")
+	public void serveSources() {
+		LazySourceServer server = new LazySourceServer(lazySourceDirs());
+
+		if (queryPort > 0) {
+			try {
+				server.serve(queryPort);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error serving lazy sources on port " + queryPort, e);
+			}
+		} else {
+			server.serveStandardIO();
+		}
+	}
+
+	@JkDoc("Delete the remapped artifacts in the store which haven't been used in the last -artifactMaxAge days")
+	public void pruneArtifacts() {
+		pruneArtifacts(artifactStore());
+	}
+
+	private void pruneArtifacts(ArtifactStore store) {
+		if (artifactMaxAge <= 0) return;
+
+		int pruned = store.prune(artifactMaxAge, TimeUnit.DAYS);
+		if (pruned > 0) JkLog.info("Pruned " + pruned + " artifacts unused for " + artifactMaxAge + " days");
+	}
+
+	private ArtifactStore artifactStore() {
+		return artifactStore != null ? new ArtifactStore(Paths.get(artifactStore)) : ArtifactStore.inUserHome();
+	}
+
+	private List<Path> lazySourceDirs() {
+		Path root = getBaseDir().resolve(SETUP_DIR).resolve("Merge/sources");
+		if (!Files.isDirectory(root)) throw new IllegalStateException("No lazy sources to remap, run setup with -lazySources=true first");
+
+		try (Stream<Path> dirs = Files.list(root)) {
+			return dirs.filter(LazySources::isPrepared).sorted().collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error listing lazy sources in " + root, e);
+		}
+	}
+
+	@JkDoc("Load the -queryFile mappings once, then answer lookups by any namespace until stopped")
+	public void queryMappings() {
+		if (queryFile == null) throw new IllegalArgumentException("Need a -queryFile to answer queries from");
+
+		JkLog.startTask("Loading " + queryFile);
+		MappingQueryServer server = new MappingQueryServer(Paths.get(queryFile));
+		JkLog.endTask();
+
+		if (queryPort > 0) {
+			try {
+				server.serve(queryPort);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error serving mapping queries on port " + queryPort, e);
+			}
+		} else {
+			server.serveStandardIO();
+		}
+	}
+
+	private static void registerAll(WatchService watcher, Map<WatchKey, Path> keys, Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				String name = dir.getFileName().toString();
+				if ("build".equals(name) || ".gradle".equals(name)) return FileVisitResult.SKIP_SUBTREE; //Gradle's business
+
+				keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	//Records the size and modification time of everything watched, as left by the last run
+	private static Map<Path, String> snapshot(Path setupDir) {
+		Map<Path, String> out = new HashMap<>();
+
+		for (String root : new String[] {"Fabric", "Forge", "Merge"}) {
+			Path dir = setupDir.resolve(root);
+			if (Files.notExists(dir)) continue;
+
+			try {
+				Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult preVisitDirectory(Path subdir, BasicFileAttributes attrs) throws IOException {
+						String name = subdir.getFileName().toString();
+						if ("build".equals(name) || ".gradle".equals(name) || subdir.equals(setupDir.resolve("Merge/sources"))) return FileVisitResult.SKIP_SUBTREE;
+
+						out.put(subdir, stateOf(attrs));
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+						out.put(file, stateOf(attrs));
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error recording the state of " + dir, e);
+			}
+		}
+
+		return out;
+	}
+
+	private static String stateOf(Path path) {
+		try {
+			return stateOf(Files.readAttributes(path, BasicFileAttributes.class));
+		} catch (IOException e) {
+			return null; //Gone, which is also how anything not in the snapshot was left
+		}
+	}
 
+	private static String stateOf(BasicFileAttributes attributes) {
+		return attributes.size() + "@" + attributes.lastModifiedTime().toMillis();
+	}
+
+	private static Stage stageFor(Path setupDir, Path changed) {
+		if (changed.startsWith(setupDir.resolve("Merge/sources"))) return null; //Lazy sources filling themselves in
+		if (changed.startsWith(setupDir.resolve("Fabric"))) return Stage.FABRIC;
+		if (changed.startsWith(setupDir.resolve("Forge"))) return Stage.FORGE;
+
+		String name = changed.getFileName().toString();
+		if (name.endsWith(".tmp")) return null; //Half written outputs
+		if (name.endsWith("-fabric.sh") || name.endsWith("-fabric.pro")) return Stage.FABRIC;
+		if (name.endsWith("-mcp-yarn.tiny") || name.endsWith("-forge-yarn-sources.jar") || ".classpath".equals(name)) return Stage.SOURCES;
+		return Stage.FORGE; //Anything else generated comes from the Forge Gradle run (and merge)
+	}
+
+	private void runStages(Path setupDir, Set<Stage> forced) {
+		//Two runs in the same checkout at once would trample over each other's outputs
+		ArtifactStore.inWorkspace(setupDir.resolve("Merge"), () -> runStagesLocked(setupDir, forced));
+	}
+
+	private void runStagesLocked(Path setupDir, Set<Stage> forced) {
 		boolean didFabric = doGradlePart(setupDir, merge -> {
 			return JkPathTree.of(merge.resolve("includes")).andMatching("build-*-fabric.sh", "proguard-*-fabric.pro");
-		}, 2, "Fabric", false, "eclipseClasspath", "--no-daemon");
+		}, 2, "Fabric", forced.contains(Stage.FABRIC), noIncludesCache ? null : IncludesCache.inUserHome(), "eclipseClasspath", "--no-daemon");
 		boolean didForge = doGradlePart(setupDir, merge -> {
 			return JkPathTree.of(merge).andMatching("includes/build-*-forge.sh", "includes/build-*-forge-yarn.sh", "includes/proguard-*-forge.pro",
 					"mappings/*-mcp-yarn.tiny", "mappings/*-yarn-srg.tiny", "remapped/mc-*-forge-srg.jar", "remapped/mc-*-forge-yarn.jar", "Forge.classpath");
-		}, 8, "Forge", didFabric, "eclipseClasspath", "--no-daemon");
+		}, 8, "Forge", didFabric || forced.contains(Stage.FORGE), null, "eclipseClasspath", "--no-daemon");
 
-		Path classpath = setupDir.resolve("Merge/.classpath");
-		out: if (Files.notExists(classpath) || didForge) {
-			JkUtilsPath.copy(classpath.resolveSibling("Forge.classpath"), classpath, StandardCopyOption.REPLACE_EXISTING);
+		try {
+			remapClasspath(setupDir, didForge || forced.contains(Stage.SOURCES));
+		} finally {
+			MCPMerger.releaseMerged(); //The sources were the last thing to want the merged tables
+		}
+	}
 
-			Document xml = JkUtilsXml.documentFrom(classpath);
-			NodeList classpathEntries = xml.getElementsByTagName("classpathentry");
+	private void remapClasspath(Path setupDir, boolean force) {
+		Path classpath = setupDir.resolve("Merge/.classpath");
+		if (Files.notExists(classpath) || force) {
+			Path forgeClasspath = classpath.resolveSibling("Forge.classpath");
 			JkPathMatcher forgeMatcher = JkPathMatcher.of(FORGE_PATH);
 
-			for (int i = 0; i < classpathEntries.getLength(); i++) {
-				Node node = classpathEntries.item(i);
-				assert node instanceof Element: "Unexpected node: " + node;
+			ArtifactStore store = artifactStore();
+			ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelVersions));
+			RemapWorkerPool workers = remapWorkers > 0 ? new RemapWorkerPool(remapWorkers, remapWorkerJobs, remapWorkerTimeout, TimeUnit.MINUTES, jvmOptions(remapWorkerOptions)) : null;
+			Map<String, CompletableFuture<Entry<Path, Path>>> remaps = new LinkedHashMap<>();
+			Map<String, Entry<Path, Path>> remapped = new HashMap<>();
+
+			try {
+				//Only the Forge entries are interesting, so stream through looking for them rather than building a whole DOM
+				try (InputStream in = Files.newInputStream(forgeClasspath)) {
+					XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+
+					try {
+						while (reader.hasNext()) {
+							if (reader.next() == XMLStreamConstants.START_ELEMENT && "classpathentry".equals(reader.getLocalName())
+									&& "lib".equals(reader.getAttributeValue(null, "kind"))) {
+								String path = reader.getAttributeValue(null, "path");
+								assert path != null;
+
+								if (isForgeJar(path, forgeMatcher)) {
+									String sources = reader.getAttributeValue(null, "sourcepath");
+									assert sources != null;
+
+									remaps.computeIfAbsent(path, jar -> {
+										return CompletableFuture.supplyAsync(() -> remapVersion(classpath.getParent(), Paths.get(jar), Paths.get(sources), store, workers, lazySources, !storeSources), executor);
+									});
+								} else {
+									JkLog.trace("Ignored non-Forge dependency: " + path);
+								}
+							}
+						}
+					} finally {
+						reader.close();
+					}
+				} catch (IOException | XMLStreamException e) {
+					throw new RuntimeException("Error reading classpath file from " + forgeClasspath, e);
+				}
+
+				if (remaps.isEmpty()) {
+					JkUtilsPath.deleteIfExists(classpath); //Nothing changed
+					throw new IllegalStateException("Unable to find Forge dependency in .classpath file?");
+				}
+
+				for (Entry<String, CompletableFuture<Entry<Path, Path>>> entry : remaps.entrySet()) {
+					try {
+						remapped.put(entry.getKey(), entry.getValue().join());
+					} catch (CompletionException e) {
+						JkUtilsPath.deleteIfExists(classpath); //Don't leave an outdated file around
+						throw new RuntimeException("Error remapping " + entry.getKey(), e.getCause());
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+				if (workers != null) workers.close();
+			}
+
+			rewriteClasspath(forgeClasspath, classpath, remapped);
+			pruneArtifacts(store); //Everything this checkout wants has just been obtained, so none of it will go
+		}
+	}
+
+	private static List<String> jvmOptions(String options) {
+		//Splitting a blank string gives a single empty option, which the JVM won't start with
+		return options == null ? Collections.emptyList() : Arrays.stream(options.trim().split("\\s+")).filter(option -> !option.isEmpty()).collect(Collectors.toList());
+	}
+
+	private static boolean isForgeJar(String path, JkPathMatcher forgeMatcher) {
+		//Most entries can be thrown out without needing a Path or a glob match
+		return path.endsWith("-recomp.jar") && path.contains("_mapped_") && forgeMatcher.matches(Paths.get(path));
+	}
+
+	private static void rewriteClasspath(Path from, Path to, Map<String, Entry<Path, Path>> remapped) {
+		Path temp = to.resolveSibling(to.getFileName() + ".tmp");
+		XMLEventFactory events = XMLEventFactory.newInstance();
+
+		try (InputStream in = Files.newInputStream(from); OutputStream out = Files.newOutputStream(temp)) {
+			XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(in);
+			XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(out, "UTF-8");
 
-				Element classpathEntry = (Element) node;
-				if ("lib".equals(classpathEntry.getAttribute("kind"))) {
-					String path = classpathEntry.getAttribute("path");
-					assert path != null;
+			try {
+				while (reader.hasNext()) {
+					XMLEvent event = reader.nextEvent();
 
-					Path jar;
-					if (forgeMatcher.matches(jar = Paths.get(path))) {
-						String sources = classpathEntry.getAttribute("sourcepath");
-						assert sources != null;
+					if (event.isStartElement()) {
+						StartElement element = event.asStartElement();
+						Attribute path;
 
-						String jarName = jar.getFileName().toString();
-						assert JkUtilsString.countOccurence(jarName, '-') == 4;
-						String version = jarName.substring(6, jarName.indexOf('-', 7));
+						Entry<Path, Path> replacement;
+						if ("classpathentry".equals(element.getName().getLocalPart()) && (path = element.getAttributeByName(new QName("path"))) != null
+								&& (replacement = remapped.get(path.getValue())) != null) {
+							List<Attribute> attributes = new ArrayList<>();
 
-						BuildSettings settings = new BuildSettings(classpath.resolveSibling("includes/build-" + version + "-forge-yarn.sh"));
-						assert settings.mcVersion.equals(version);
-						assert settings.mcFile.equals(classpath.resolveSibling("remapped/mc-" + version + "-forge-yarn.jar"));
-						assert settings.mappingFile.equals(classpath.resolveSibling("mappings/" + version + "-yarn-srg.tiny"));
+							for (Iterator<?> it = element.getAttributes(); it.hasNext();) {
+								Attribute attribute = (Attribute) it.next();
 
-						Path mappings = classpath.resolveSibling("mappings/" + version + "-mcp-yarn.tiny");
-						Path remappedSources = settings.mcFile.resolveSibling("mc-" + version + "-forge-yarn-sources.jar");
-						remappedSources(Paths.get(sources), jar, settings.libraries(), mappings, remappedSources);
+								switch (attribute.getName().getLocalPart()) {
+								case "path":
+									attributes.add(events.createAttribute(attribute.getName(), replacement.getKey().toAbsolutePath().toString()));
+									break;
 
-						classpathEntry.setAttribute("path", settings.mcFile.toAbsolutePath().toString());
-						classpathEntry.setAttribute("sourcepath", remappedSources.toAbsolutePath().toString());
+								case "sourcepath":
+									attributes.add(events.createAttribute(attribute.getName(), replacement.getValue().toAbsolutePath().toString()));
+									break;
 
-						try (OutputStream out = Files.newOutputStream(classpath)) {
-							JkUtilsXml.output(xml, out);
-						} catch (IOException e) {
-							throw new RuntimeException("Error writing classpath file to " + classpath, e);
+								default:
+									attributes.add(attribute);
+									break;
+								}
+							}
+
+							event = events.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
 						}
-						break out;
 					}
 
-					JkLog.trace("Ignored non-Forge dependency: " + jar);
+					writer.add(event);
 				}
+
+				writer.flush();
+			} finally {
+				writer.close();
+				reader.close();
 			}
+		} catch (IOException | XMLStreamException e) {
+			JkUtilsPath.deleteIfExists(temp);
+			throw new RuntimeException("Error writing classpath file to " + to, e);
+		}
 
-			JkUtilsPath.deleteFile(classpath); //Nothing changed
-			throw new IllegalStateException("Unable to find Forge dependency in .classpath file?");
+		JkUtilsPath.move(temp, to, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static Entry<Path, Path> remapVersion(Path merge, Path jar, Path sources, ArtifactStore store, RemapWorkerPool workers, boolean lazy, boolean compress) {
+		String jarName = jar.getFileName().toString();
+		assert JkUtilsString.countOccurence(jarName, '-') == 4;
+		String version = jarName.substring(6, jarName.indexOf('-', 7));
+
+		BuildSettings settings = new BuildSettings(merge.resolve("includes/build-" + version + "-forge-yarn.sh"));
+		assert settings.mcVersion.equals(version);
+		assert settings.mcFile.equals(merge.resolve("remapped/mc-" + version + "-forge-yarn.jar"));
+		assert settings.mappingFile.equals(merge.resolve("mappings/" + version + "-yarn-srg.tiny"));
+		assert settings.missingClasspath().isEmpty(): "Missing classpath entries: " + settings.missingClasspath();
+
+		Path mappings = merge.resolve("mappings/" + version + "-mcp-yarn.tiny");
+		Path remappedSources = settings.mcFile.resolveSibling("mc-" + version + "-forge-yarn-sources.jar");
+		Collection<Path> libraries = settings.libraries();
+
+		if (lazy) {//Nothing is remapped until it's asked for
+			Path lazySources = merge.resolve("sources/" + version);
+			LazySources.prepare(lazySources, sources, jar, libraries, mappings);
+			return new SimpleImmutableEntry<>(settings.mcFile, lazySources);
+		}
+
+		//Everything that could change the output, so any checkout with the same inputs gets the same sources
+		StringBuilder key = new StringBuilder();
+		key.append("sources=").append(Hashing.SHA1(sources)).append('\n');
+		key.append("jar=").append(Hashing.SHA1(jar)).append('\n');
+		key.append("mappings=").append(Hashing.SHA1(mappings)).append('\n');
+		for (Path library : libraries) {
+			key.append("library=").append(library.getFileName()).append('\n'); //Versioned names, only used to resolve types
 		}
+		key.append("compress=").append(compress);
+
+		Path stored = store.obtain(Hashing.SHA1(key.toString()), remappedSources.getFileName().toString(), output -> {
+			if (workers != null) {
+				List<Path> fullClasspath = new ArrayList<>(libraries);
+				fullClasspath.add(jar);
+				workers.remap(sources, ClasspathCache.inUserHome().resolve(fullClasspath), mappings, output, compress);
+			} else {
+				remappedSources(sources, jar, libraries, mappings, output, compress);
+			}
+		});
+		ArtifactStore.link(stored, remappedSources);
+
+		return new SimpleImmutableEntry<>(settings.mcFile, remappedSources);
 	}
 
-	private boolean doGradlePart(Path setupDir, Function<Path, JkPathTree> expectedResult, int results, String name, boolean force, String... args) {
+	private boolean doGradlePart(Path setupDir, Function<Path, JkPathTree> expectedResult, int results, String name, boolean force, IncludesCache cache, String... args) {
 		Path merge = setupDir.resolve("Merge");
 		JkUtilsPath.createDirectories(merge.resolve("includes"));
 		JkUtilsPath.createDirectories(merge.resolve("remapped"));
@@ -132,10 +634,21 @@ class Build extends JkCommands {
 			expectedResults.deleteContent();
 			JkUtilsPath.deleteIfExists(hashes);
 
-			Path build = setupDir.resolve("Build");
+			//The results only point at what Gradle has already downloaded, so if those are all still there they can be reused as they are
+			String cacheKey = cache != null ? cache.keyFor(settings) : null;
+			if (cacheKey != null && cache.restore(cacheKey, merge.resolve("includes"))) {
+				if (expectedResults.count(results, false) == results) {
+					JkLog.info("Restored " + name + " results from cache, skipping Gradle");
+					saveHashes(settings, hashes);
+					return true;
+				}
+
+				expectedResults.deleteContent(); //Somehow incomplete, do it properly
+			}
 
-			//Move the stuff over needed for building
-			JkPathTree.of(settings).copyTo(build, StandardCopyOption.COPY_ATTRIBUTES);
+			//Each part keeps its own build directory between runs, so Gradle's state in there is still around next time
+			Path build = setupDir.resolve("Build-" + name);
+			stageSettings(settings, build);
 
 			boolean increasedLogging = false;
 			if (!quietGradle && JkLog.verbosity() == Verbosity.MUTE) {
@@ -145,28 +658,74 @@ class Build extends JkCommands {
 			}
 
 			//Invoke Gradle, hope it does what it's meant to
-			JkJavaProcess.of().withWorkingDir(build).withClasspath(build.resolve("gradle/wrapper/gradle-wrapper.jar"))
+			//The wrapper finds its properties next to its jar, so all the parts can share the one copy
+			JkJavaProcess.of().withWorkingDir(build).withClasspath(setupDir.resolve("Build/gradle/wrapper/gradle-wrapper.jar"))
 			.andOptions("-Dorg.gradle.appname=Build").runClassSync("org.gradle.wrapper.GradleWrapperMain", args);
 
 			JkLog.startTask("Starting extractor");
 			ClassPathExtractor.main(name, build.toAbsolutePath(), merge.toAbsolutePath());
 			JkLog.endTask();
 
+			if (cacheKey != null) cache.store(cacheKey, expectedResults.getFiles());
+
 			//Remember to set the logging back if it was changed
 			if (increasedLogging) JkLog.setVerbosity(Verbosity.MUTE);
 
 			//Save the hashes now the build has completed
 			saveHashes(settings, hashes);
 
-			//Clean up the stuff used for building
-			JkPathTree.of(build).andMatching(false, "gradle/**").deleteContent();
-
 			return true;
 		}
 
 		return false;
 	}
 
+	private static void stageSettings(Path settings, Path build) {
+		Path staged = build.resolve(".staged");
+		Set<String> previous = new HashSet<>();
+		if (Files.exists(staged)) {
+			try {
+				previous.addAll(Files.readAllLines(staged));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error reading staged files from " + staged, e);
+			}
+		}
+
+		List<String> current = new ArrayList<>();
+		for (Path file : JkPathTree.of(settings).getFiles()) {
+			String relative = settings.relativize(file).toString();
+			current.add(relative);
+			previous.remove(relative);
+
+			Path target = build.resolve(relative);
+			try {
+				if (Files.exists(target) && Files.isSameFile(file, target)) continue; //Still linked from last time
+				JkUtilsPath.deleteIfExists(target);
+				JkUtilsPath.createDirectories(target.getParent());
+
+				try {
+					Files.createLink(target, file);
+				} catch (IOException | UnsupportedOperationException e) {
+					//Hard links need to stay on the same file system, and not every one supports them
+					Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error staging " + file + " to " + target, e);
+			}
+		}
+
+		//Anything staged before that isn't in the settings any more shouldn't be left around for Gradle to pick up
+		for (String removed : previous) {
+			JkUtilsPath.deleteIfExists(build.resolve(removed));
+		}
+
+		try {
+			Files.write(staged, current);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error writing staged files to " + staged, e);
+		}
+	}
+
 	private static boolean checkHashes(Path directory, Path hashSave) {
 		if (Files.notExists(hashSave)) return false;
 
@@ -181,10 +740,26 @@ class Build extends JkCommands {
 				String resource = line.substring(0, split);
 				String hash = line.substring(split + 1);
 
+				//Lines are resource:size:modified:hash, although older saves only have the resource and hash
+				long size = -1, modified = -1;
+				int modifiedSplit = resource.lastIndexOf(':');
+				int sizeSplit = modifiedSplit > 0 ? resource.lastIndexOf(':', modifiedSplit - 1) : -1;
+				if (sizeSplit > 0) {
+					try {
+						size = Long.parseLong(resource.substring(sizeSplit + 1, modifiedSplit));
+						modified = Long.parseLong(resource.substring(modifiedSplit + 1));
+						resource = resource.substring(0, sizeSplit);
+					} catch (NumberFormatException e) {
+						size = modified = -1; //Just a resource with colons in
+					}
+				}
+
 				Path file = directory.resolve(resource);
 				if (Files.notExists(file)) return false; //It's vanished
 
 				assert Files.isReadable(file);
+				//Something left exactly as it was when the hashes were saved can't have changed, so there's no need to read it all again
+				if (Files.size(file) == size && Files.getLastModifiedTime(file).toMillis() == modified) continue;
 				if (!hash.equals(Hashing.SHA1(file))) return false; //Hash change
 			}
 		} catch (IOException | UncheckedIOException e) {
@@ -204,6 +779,11 @@ class Build extends JkCommands {
 
 				writer.write(directory.relativize(file).toString());
 				writer.write(':');
+				//Taken before hashing, so anything changed in the meantime will be hashed again next time
+				writer.write(Long.toString(Files.size(file)));
+				writer.write(':');
+				writer.write(Long.toString(Files.getLastModifiedTime(file).toMillis()));
+				writer.write(':');
 				writer.write(Hashing.SHA1(file));
 				writer.newLine();
 			}
@@ -212,94 +792,27 @@ class Build extends JkCommands {
 		}
 	}
 
-	private static void remappedSources(Path input, Path realJar, Set<Path> classpath, Path mappingFile, Path output) {
-		JkUtilsPath.deleteIfExists(output);
-
-		Mercury mercury = new Mercury();
-
-		//Add everything to the classpath
-		mercury.getClassPath().addAll(classpath);
-		mercury.getClassPath().add(realJar);
-
-		MappingSet mappings = MappingSet.create();
-		TinyUtils.createTinyMappingProvider(mappingFile, "mcp", "named").load(new MappingAcceptor() {
-			private final Field parameters; {
-				try {
-					parameters = MethodMappingImpl.class.getDeclaredField("parameters");
-					parameters.setAccessible(true);
-
-					//Breaks with J12+ but so do other things right now
-					Field modifiers = Field.class.getDeclaredField("modifiers");
-					modifiers.setAccessible(true);
-					modifiers.setInt(parameters, modifiers.getInt(parameters) & ~Modifier.FINAL);
-				} catch (ReflectiveOperationException e) {
-					throw new AssertionError("Why would it not be happy?", e);
-				}
-			}
-
-			private void ensureEnoughParameters(MethodMapping mapping, int length) {
-				assert mapping instanceof MethodMappingImpl;
-
-				try {
-					MethodParameterMapping[] params = (MethodParameterMapping[]) parameters.get(mapping);
-
-					if (params.length < length) {
-						parameters.set(mapping, Arrays.copyOf(params, length));
-					}
-				} catch (ReflectiveOperationException e) {
-					throw new AssertionError("Why would it not be happy?", e);
-				}
-			}
-
-			private boolean allPresent(Member member) {
-				return !JkUtilsString.isBlank(member.owner) && !JkUtilsString.isBlank(member.name) && !JkUtilsString.isBlank(member.desc);
-			}
-
-			@Override
-			public void acceptClass(String mcpName, String yarnName) {
-				assert !JkUtilsString.isBlank(mcpName) && !JkUtilsString.isBlank(yarnName);
-				mappings.getOrCreateClassMapping(mcpName).setDeobfuscatedName(yarnName);
-			}
-
-			@Override
-			public void acceptMethod(Member method, String yarnName) {
-				assert allPresent(method) && !JkUtilsString.isBlank(yarnName);
-				mappings.getOrCreateClassMapping(method.owner).getOrCreateMethodMapping(method.name, method.desc).setDeobfuscatedName(yarnName);
-			}
-
-			@Override
-			public void acceptMethodArg(Member method, int lvIndex, String yarnName) {
-				assert allPresent(method) && !JkUtilsString.isBlank(yarnName);
-
-				MethodMapping mapping = mappings.getOrCreateClassMapping(method.owner).getOrCreateMethodMapping(method.name, method.desc);
-				ensureEnoughParameters(mapping, lvIndex + 1);
-				mapping.createParameterMapping(lvIndex, yarnName);
-			}
-
-			@Override
-			public void acceptMethodVar(Member method, int lvIndex, int startOpIndex, int asmIndex, String yarnName) {
-				//Lorenz has no notion of local variables
-			}
-
-			@Override
-			public void acceptField(Member field, String yarnName) {
-				assert allPresent(field) && !JkUtilsString.isBlank(yarnName);
-				mappings.getOrCreateClassMapping(field.owner).getOrCreateFieldMapping(field.name, field.desc).setDeobfuscatedName(yarnName);
-			}
-		});
-		mercury.getProcessors().add(MercuryRemapper.create(mappings));
-
-		Path tempSources = JkUtilsPath.createTempDirectory(input.getFileName().toString());
-		try (JkPathTree jar = JkPathTree.ofZip(input)) {
-			jar.copyTo(tempSources);
-		}
-
-		try (JkPathTree jar = JkPathTree.ofZip(output)) {
-			jar.createIfNotExist();
+	private static IMappingProvider mappingsFrom(Path mappingFile, String from, String to) {
+		//If the mappings were merged by this JVM they can be used as they are, rather than parsing them back in
+		ClassTable merged = MCPMerger.getMerged(mappingFile);
+		return merged != null ? new TableMappingProvider(merged, Namespace.byTinyName(from), Namespace.byTinyName(to)) : TinyUtils.createTinyMappingProvider(mappingFile, from, to);
+	}
 
-			mercury.rewrite(tempSources, jar.getRoot());
-		} catch (Exception e) {
-			throw new RuntimeException("Error remapping Forge jar", e);
+	private static void remappedSources(Path input, Path realJar, Collection<Path> classpath, Path mappingFile, Path output, boolean compress) {
+		//Add everything to the classpath, going via the cache to avoid JDT indexing things it doesn't need to
+		List<Path> fullClasspath = new ArrayList<>(classpath);
+		fullClasspath.add(realJar);
+
+		//None of the preparation depends on the rest, so the classpath and mappings are readied whilst the sources are extracted
+		//Both block on files, so they get their own threads rather than tying up the common pool
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			CompletableFuture<List<Path>> resolvedClasspath = CompletableFuture.supplyAsync(() -> ClasspathCache.inUserHome().resolve(fullClasspath), executor);
+			CompletableFuture<MappingSet> mappings = CompletableFuture.supplyAsync(() -> LorenzLoader.load(mappingsFrom(mappingFile, "mcp", "named")), executor);
+
+			RemapWorker.remap(input, resolvedClasspath::join, mappings::join, output, compress);
+		} finally {
+			executor.shutdown(); //Nothing more to add, the threads will go once both are done
 		}
 
 		System.gc(); //Account for JDT bug: https://github.com/CadixDev/Mercury/issues/2
@@ -1,103 +1,90 @@
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 import java.util.stream.Collectors;
 
 public class BuildSettings {
-	public final Set<Path> classpath;
+	public final List<Path> classpath;
 	public final Path mappingFile, mcFile;
 	public final String mcVersion, sourceNs, targetNs;
+	private final List<Path> libraries;
+	private volatile List<Path> missingClasspath;
 
 	public BuildSettings(Path file) {
-		Set<Path> classpath = null;
+		String contents;
+		try {
+			contents = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading build settings: " + file, e);
+		}
+
+		List<Path> classpath = null;
 		Path mappingFile = null, mcFile = null;
 		String mcVersion = null, sourceNs = null, targetNs = null;
 
-		try (BufferedReader reader = Files.newBufferedReader(file)) {
-			boolean readOn = false;
-			String rolledName = null;
-			StringBuilder rollOn = new StringBuilder();
-
-			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-				boolean carryOn = line.charAt(line.length() - 1) == '\\';
-
-				String name, contents;
-				if (!readOn) {
-					int split = line.indexOf('=');
-					name = line.substring(0, split);
-
-					if (carryOn) {
-						readOn = true;
-
-						assert rolledName == null;
-						rolledName = name;
-
-						assert rollOn.length() == 0;
-						rollOn.append(line, split + 1, line.length() - 1);
-						continue;
+		StringBuilder value = new StringBuilder();
+		for (int pos = 0, end = contents.length(); pos < end;) {
+			int split = contents.indexOf('=', pos);
+			if (split < 0) break; //Trailing blank line(s)
+			String name = contents.substring(pos, split).trim();
+
+			//Values run to the end of the line, unless the line ends with a \ in which case they carry on to the next
+			value.setLength(0);
+			for (pos = split + 1; pos < end; pos++) {
+				char c = contents.charAt(pos);
+
+				if (c == '\n' || c == '\r') {
+					int last = value.length() - 1;
+
+					if (last >= 0 && value.charAt(last) == '\\') {
+						value.setLength(last);
+						if (c == '\r' && pos + 1 < end && contents.charAt(pos + 1) == '\n') pos++;
+					} else {
+						break;
 					}
-
-					contents = line.substring(split + 1);
 				} else {
-					assert rolledName != null;
-					assert rollOn.length() > 0;
-					rollOn.append(line);
-
-					if (carryOn) {
-						rollOn.setLength(rollOn.length() - 1);
-						continue;
-					}
-					readOn = false;
-
-					name = rolledName;
-					rolledName = null;
-
-					contents = rollOn.toString();
-					rollOn.setLength(0);
-				}
-
-				switch (name) {
-				case "classPath": //Should be File#pathSeparator but the files always use Unix endings
-					classpath = Arrays.stream(contents.split(":(?=[^\\\\/])")).map(BuildSettings::asPath).collect(Collectors.toSet());
-					assert classpath.stream().allMatch(Files::isRegularFile);
-					break;
-
-				case "mappingFile":
-					mappingFile = asPath(contents);
-					assert Files.isRegularFile(mappingFile);
-					break;
-
-				case "mcFile":
-					mcFile = asPath(contents);
-					assert Files.isRegularFile(mcFile);
-					break;
-
-				case "mcVersion":
-					mcVersion = stripQuotes(contents);
-					break;
-
-				case "sourceNs":
-					sourceNs = stripQuotes(contents);
-					break;
-
-				case "targetNs":
-					targetNs = stripQuotes(contents);
-					break;
+					value.append(c);
 				}
 			}
-		} catch (IOException e) {
-			throw new UncheckedIOException("Error reading build settings: " + file, e);
+			while (pos < end && (contents.charAt(pos) == '\n' || contents.charAt(pos) == '\r')) pos++;
+
+			switch (name) {
+			case "classPath":
+				classpath = splitClasspath(value);
+				break;
+
+			case "mappingFile":
+				mappingFile = asPath(value, 0, value.length());
+				assert Files.isRegularFile(mappingFile);
+				break;
+
+			case "mcFile":
+				mcFile = asPath(value, 0, value.length());
+				assert Files.isRegularFile(mcFile);
+				break;
+
+			case "mcVersion":
+				mcVersion = stripQuotes(value, 0, value.length());
+				break;
+
+			case "sourceNs":
+				sourceNs = stripQuotes(value, 0, value.length());
+				break;
+
+			case "targetNs":
+				targetNs = stripQuotes(value, 0, value.length());
+				break;
+			}
 		}
 
 		assert classpath != null;
-		this.classpath = Collections.unmodifiableSet(classpath);
+		this.classpath = Collections.unmodifiableList(classpath);
 		assert mappingFile != null;
 		this.mappingFile = mappingFile;
 		assert mcFile != null;
@@ -108,20 +95,52 @@ public class BuildSettings {
 		this.sourceNs = sourceNs;
 		assert targetNs != null;
 		this.targetNs = targetNs;
+
+		List<Path> libraries = new ArrayList<>(classpath);
+		libraries.removeIf(mcFile::equals);
+		this.libraries = Collections.unmodifiableList(libraries);
 	}
 
-	private static String stripQuotes(String text) {
-		assert text.length() > 2: "Stripped everything from " + text;
-		return text.substring(1, text.length() - 1);
+	private static List<Path> splitClasspath(CharSequence contents) {
+		List<Path> out = new ArrayList<>();
+
+		//Should be File#pathSeparator but the files always use Unix endings, skip : that are part of a Windows drive letter though
+		int start = 0;
+		for (int pos = 0, end = contents.length() - 1; pos < end; pos++) {
+			if (contents.charAt(pos) == ':') {
+				char next = contents.charAt(pos + 1);
+
+				if (next != '\\' && next != '/') {
+					out.add(asPath(contents, start, pos));
+					start = pos + 1;
+				}
+			}
+		}
+		out.add(asPath(contents, start, contents.length()));
+
+		return out;
 	}
 
-	private static Path asPath(String path) {
-		return Paths.get(stripQuotes(path));
+	private static String stripQuotes(CharSequence text, int start, int end) {
+		assert end - start > 2: "Stripped everything from " + text.subSequence(start, end);
+		return text.subSequence(start + 1, end - 1).toString();
 	}
 
-	public Set<Path> libraries() {
-		Set<Path> out = new HashSet<>(classpath);
-		out.remove(mcFile);
-		return out;
+	private static Path asPath(CharSequence text, int start, int end) {
+		return Paths.get(stripQuotes(text, start, end));
+	}
+
+	public List<Path> libraries() {
+		return libraries;
+	}
+
+	public List<Path> missingClasspath() {
+		List<Path> missing = missingClasspath;
+
+		if (missing == null) {//Only stat everything when it's actually asked for, which is mostly just for assertions
+			missingClasspath = missing = Collections.unmodifiableList(classpath.parallelStream().filter(path -> !Files.isRegularFile(path)).collect(Collectors.toList()));
+		}
+
+		return missing;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,233 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import dev.jeka.core.api.system.JkLog;
+import dev.jeka.core.api.utils.JkUtilsPath;
+
+import mappings.Hashing;
+import mappings.UserCache;
+
+//Keeps a copy of each library jar with only its classes in, keyed by the jar's hash, so JDT has less to index for jars shared between versions and runs
+//JDT's own type and binding indexes can't be kept from outside of it, so this cuts down what it has to build them from instead
+public class ClasspathCache {
+	private enum Kind {
+		ORIGINAL, STRIPPED, EMPTY;
+	}
+
+	private static class Entry {
+		final long size, modified;
+		final String hash;
+		final Kind kind;
+
+		Entry(long size, long modified, String hash, Kind kind) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+			this.kind = kind;
+		}
+	}
+
+	private final Path root, index;
+
+	public static ClasspathCache inUserHome() {
+		return new ClasspathCache(UserCache.resolve("classpath"));
+	}
+
+	public ClasspathCache(Path root) {
+		this.root = root;
+		index = root.resolve("index.txt");
+	}
+
+	//Swap each jar for a copy of only its classes, dropping those without any (like natives)
+	public List<Path> resolve(Collection<Path> classpath) {
+		//Held throughout so no two runs strip the same jar or write the index over each other
+		return FileLocks.supply(root.resolve("index.lock"), "the classpath cache", () -> {
+			Map<Path, Entry> entries = readIndex();
+			boolean changed = false;
+			List<Path> out = new ArrayList<>(classpath.size());
+
+			for (Path path : classpath) {
+				if (Files.isDirectory(path)) {
+					out.add(path);
+					continue;
+				}
+
+				Path jar = path.toAbsolutePath();
+				Entry entry = entries.get(jar);
+				Entry current = getEntry(jar, entry);
+				if (current != entry) {
+					entries.put(jar, current);
+					changed = true;
+				}
+
+				switch (current.kind) {
+				case ORIGINAL:
+					out.add(jar);
+					break;
+
+				case STRIPPED:
+					out.add(root.resolve(current.hash + ".jar"));
+					break;
+
+				case EMPTY:
+					JkLog.trace("Dropping class-less classpath entry: " + jar);
+					break;
+				}
+			}
+
+			if (changed) {
+				clean(entries);
+				writeIndex(entries);
+			}
+			return out;
+		});
+	}
+
+	private Entry getEntry(Path jar, Entry entry) {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading attributes of " + jar, e);
+		}
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().toMillis();
+
+		if (entry != null && entry.size == size && entry.modified == modified && (entry.kind != Kind.STRIPPED || Files.exists(root.resolve(entry.hash + ".jar")))) {
+			return entry;
+		}
+
+		String hash = Hashing.SHA1(jar);
+		return new Entry(size, modified, hash, strip(jar, hash));
+	}
+
+	private Kind strip(Path jar, String hash) {
+		Path stripped = root.resolve(hash + ".jar");
+		if (Files.exists(stripped)) return Kind.STRIPPED; //Same jar living somewhere else
+
+		JkUtilsPath.createDirectories(root);
+		Path temp;
+		try {
+			temp = Files.createTempFile(root, hash, ".tmp");
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error creating temporary jar in " + root, e);
+		}
+
+		try {
+			int classes = 0, skipped = 0;
+			try (ZipInputStream in = new ZipInputStream(Files.newInputStream(jar)); ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(temp))) {
+				out.setLevel(Deflater.BEST_SPEED);
+
+				for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+					if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+						skipped++;
+						continue;
+					}
+
+					out.putNextEntry(new ZipEntry(entry.getName()));
+					JarRemapper.copy(in, out);
+					out.closeEntry();
+					classes++;
+				}
+
+				if (classes == 0) out.putNextEntry(new ZipEntry("empty")); //Keep the (discarded) zip valid
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error stripping " + jar, e);
+			}
+
+			if (classes == 0) return Kind.EMPTY;
+			if (skipped == 0) return Kind.ORIGINAL; //Nothing to gain from a copy
+
+			JkUtilsPath.move(temp, stripped, StandardCopyOption.REPLACE_EXISTING);
+			return Kind.STRIPPED;
+		} finally {
+			JkUtilsPath.deleteIfExists(temp);
+		}
+	}
+
+	//Forgets jars which have gone, along with any stripped copies nothing uses any more, so old versions' libraries don't build up forever
+	private void clean(Map<Path, Entry> entries) {
+		entries.keySet().removeIf(Files::notExists);
+
+		Set<String> used = new HashSet<>();
+		for (Entry entry : entries.values()) {
+			if (entry.kind == Kind.STRIPPED) used.add(entry.hash + ".jar");
+		}
+
+		try (Stream<Path> files = Files.list(root)) {
+			files.filter(file -> file.getFileName().toString().endsWith(".jar") && !used.contains(file.getFileName().toString())).forEach(JkUtilsPath::deleteIfExists);
+		} catch (IOException e) {
+			JkLog.warn("Unable to clean up the classpath cache in " + root + ": " + e);
+		}
+	}
+
+	private Map<Path, Entry> readIndex() {
+		Map<Path, Entry> entries = new HashMap<>();
+		if (Files.notExists(index)) return entries;
+
+		try (BufferedReader reader = Files.newBufferedReader(index)) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				String[] bits = line.split("\t");
+				if (bits.length != 5) throw new IOException("Unexpected index line: " + line);
+
+				entries.put(Paths.get(bits[4]), new Entry(Long.parseLong(bits[0]), Long.parseLong(bits[1]), bits[2], Kind.valueOf(bits[3])));
+			}
+		} catch (IOException | RuntimeException e) {
+			JkLog.warn("Discarding unreadable classpath cache index at " + index + ": " + e);
+			entries.clear();
+		}
+
+		return entries;
+	}
+
+	private void writeIndex(Map<Path, Entry> entries) {
+		JkUtilsPath.createDirectories(root);
+
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(root, "index", ".tmp");
+
+			try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+				for (Map.Entry<Path, Entry> mapping : entries.entrySet()) {
+					Entry entry = mapping.getValue();
+
+					writer.write(Long.toString(entry.size));
+					writer.write('\t');
+					writer.write(Long.toString(entry.modified));
+					writer.write('\t');
+					writer.write(entry.hash);
+					writer.write('\t');
+					writer.write(entry.kind.name());
+					writer.write('\t');
+					writer.write(mapping.getKey().toString());
+					writer.newLine();
+				}
+			}
+
+			Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error writing classpath cache index to " + index, e);
+		} finally {
+			if (temp != null) JkUtilsPath.deleteIfExists(temp);
+		}
+	}
+}
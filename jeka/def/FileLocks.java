@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import dev.jeka.core.api.system.JkLog;
+import dev.jeka.core.api.utils.JkUtilsPath;
+
+//Runs things holding a lock file, shutting out both other processes and other threads in this one
+public class FileLocks {
+	//File locks are held by the whole JVM (and trying to take one twice throws), so threads in this one have to queue up separately
+	private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+	public static void run(Path lockFile, String what, Runnable task) {
+		supply(lockFile, what, () -> {
+			task.run();
+			return null;
+		});
+	}
+
+	public static <T> T supply(Path lockFile, String what, Supplier<T> task) {
+		Path path = lockFile.toAbsolutePath().normalize();
+
+		synchronized (LOCKS.computeIfAbsent(path, k -> new Object())) {
+			JkUtilsPath.createDirectories(path.getParent());
+
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				FileLock lock = channel.tryLock();
+				if (lock == null) {
+					JkLog.info("Waiting for something else to finish with " + what);
+					lock = channel.lock();
+				}
+
+				try {
+					return task.get();
+				} finally {
+					lock.release();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error locking " + what + " with " + path, e);
+			}
+		}
+	}
+}
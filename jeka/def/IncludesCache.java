@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import dev.jeka.core.api.file.JkPathTree;
+import dev.jeka.core.api.system.JkLog;
+import dev.jeka.core.api.utils.JkUtilsPath;
+
+import mappings.Hashing;
+import mappings.UserCache;
+
+//Keeps the include files a Gradle run produced, keyed by what went into it, so they can be put back without running Gradle again
+public class IncludesCache {
+	private final Path root;
+
+	public static IncludesCache inUserHome() {
+		return new IncludesCache(UserCache.resolve("includes"));
+	}
+
+	public IncludesCache(Path root) {
+		this.root = root;
+	}
+
+	//Only the properties and build script decide what Gradle resolves, so formatting changes to gradle.properties (or new files) don't miss
+	public String keyFor(Path settings) {
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(settings.resolve("gradle.properties"))) {
+			properties.load(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading properties from " + settings, e);
+		}
+
+		StringBuilder key = new StringBuilder();
+		for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+			if (name.startsWith("org.gradle.")) continue; //JVM settings for Gradle itself
+			key.append(name).append('=').append(properties.getProperty(name)).append('\n');
+		}
+		key.append("build.gradle=").append(Hashing.SHA1(settings.resolve("build.gradle")));
+
+		return Hashing.SHA1(key.toString());
+	}
+
+	public boolean restore(String key, Path includes) {
+		Path cached = root.resolve(key);
+		if (Files.notExists(cached)) return false;
+
+		//Held whilst copying out so another run can't swap the set over part way through
+		return FileLocks.supply(lockFor(key), "cached includes for " + key, () -> {
+			if (Files.notExists(cached)) return false; //Being replaced whilst waiting for the lock
+
+			try (JkPathTree tree = JkPathTree.of(cached)) {
+				Collection<Path> files = tree.getFiles();
+
+				//Everything the build files point to comes from Gradle's caches, which might have been cleared out since
+				for (Path file : files) {
+					if (file.getFileName().toString().endsWith(".sh") && !isResolved(file)) {
+						JkLog.trace("Cached includes for " + key + " refer to missing files");
+						return false;
+					}
+				}
+
+				for (Path file : files) {
+					JkUtilsPath.copy(file, includes.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+				}
+			}
+
+			return true;
+		});
+	}
+
+	private Path lockFor(String key) {
+		return root.resolve(key + ".lock");
+	}
+
+	private static boolean isResolved(Path file) {
+		try {
+			BuildSettings settings = new BuildSettings(file);
+			return Files.isRegularFile(settings.mappingFile) && Files.isRegularFile(settings.mcFile) && settings.missingClasspath().isEmpty();
+		} catch (RuntimeException e) {
+			return false; //Can't trust it if it can't be read
+		}
+	}
+
+	public void store(String key, Collection<Path> files) {
+		Path cached = root.resolve(key);
+
+		try {
+			FileLocks.run(lockFor(key), "cached includes for " + key, () -> {
+				Path temp = null;
+				try {
+					//Each run fills its own directory, so nothing else can add to (or take from) it part way through
+					JkUtilsPath.createDirectories(root);
+					temp = Files.createTempDirectory(root, key);
+					for (Path file : files) {
+						JkUtilsPath.copy(file, temp.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+					}
+
+					if (Files.exists(cached)) JkPathTree.of(cached).deleteContent();
+					JkUtilsPath.deleteIfExists(cached);
+					Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				} finally {
+					if (temp != null && Files.exists(temp)) {
+						JkPathTree.of(temp).deleteContent();
+						JkUtilsPath.deleteIfExists(temp);
+					}
+				}
+			});
+		} catch (UncheckedIOException e) {
+			JkLog.warn("Unable to cache includes for " + key + ": " + e.getCause());
+		}
+	}
+}
@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import dev.jeka.core.api.utils.JkUtilsPath;
+
+import net.fabricmc.tinyremapper.IMappingProvider;
+import net.fabricmc.tinyremapper.TinyRemapper;
+
+public class JarRemapper {
+	public static void remap(Path input, Path output, IMappingProvider mappings, Collection<Path> classpath, int threads) {
+		TinyRemapper remapper = TinyRemapper.newRemapper().withMappings(mappings).threads(Math.max(1, threads)).rebuildSourceFilenames(true).build();
+		Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+
+		try {
+			try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(temp))) {
+				remapper.readClassPath(classpath.toArray(new Path[0]));
+				remapper.readInputs(input);
+
+				copyResources(input, out);
+
+				//Classes come back from each of the remapper's threads as they finish, so write them out as they arrive
+				UncheckedIOException[] error = new UncheckedIOException[1];
+				remapper.apply((name, bytes) -> {
+					synchronized (out) {
+						if (error[0] != null) return;
+
+						try {
+							out.putNextEntry(new ZipEntry(name + ".class"));
+							out.write(bytes);
+							out.closeEntry();
+						} catch (IOException e) {
+							error[0] = new UncheckedIOException("Error writing " + name + " to " + temp, e);
+						}
+					}
+				});
+				if (error[0] != null) throw error[0];
+			}
+
+			JkUtilsPath.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException | UncheckedIOException e) {
+			throw new RuntimeException("Error remapping " + input + " to " + output, e);
+		} finally {
+			remapper.finish();
+			JkUtilsPath.deleteIfExists(temp); //Only left if something went wrong, whatever it was that threw
+		}
+	}
+
+	private static void copyResources(Path input, ZipOutputStream out) throws IOException {
+		try (ZipInputStream in = new ZipInputStream(Files.newInputStream(input))) {
+			for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+				String name = entry.getName();
+				if (entry.isDirectory() || name.endsWith(".class") || isSignature(name)) continue;
+
+				out.putNextEntry(new ZipEntry(name));
+				copy(in, out);
+				out.closeEntry();
+			}
+		}
+	}
+
+	private static boolean isSignature(String name) {
+		//Signatures won't match the remapped classes, so they're only going to cause problems if they're kept
+		return name.startsWith("META-INF/") && (name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC"));
+	}
+
+	static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[8192];
+
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			out.write(buffer, 0, read);
+		}
+	}
+}
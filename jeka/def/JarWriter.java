@@ -0,0 +1,205 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import dev.jeka.core.api.utils.JkUtilsPath;
+
+//Packs a directory into a jar, compressing the entries in parallel but writing them in (sorted) order so the output is always the same
+public class JarWriter {
+	private static class Entry {
+		final byte[] name;
+		final boolean deflated;
+		final int crc, size, compressedSize;
+		byte[] data; //Dropped once written, only what the central directory needs is kept after that
+		long offset;
+
+		Entry(byte[] name, boolean deflated, int crc, int size, byte[] data) {
+			this.name = name;
+			this.deflated = deflated;
+			this.crc = crc;
+			this.size = size;
+			this.data = data;
+			compressedSize = data.length;
+		}
+	}
+
+	private static final int DOS_TIME = 0; //Midnight
+	private static final int DOS_DATE = 1 << 5 | 1; //1st January 1980, ZIP's epoch
+	private static final int UTF8_NAMES = 1 << 11;
+
+	public static void pack(Path directory, Path output, boolean compress) {
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(directory)) {
+			files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error listing " + directory, e);
+		}
+
+		Map<String, Path> names = new TreeMap<>();
+		for (Path file : files) {
+			names.put(directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"), file);
+		}
+		//Without ZIP64 the count only gets two bytes, writing more would silently wrap around
+		if (names.size() > 0xFFFF) throw new IllegalArgumentException("Too many files in " + directory + " to pack without ZIP64: " + names.size());
+
+		Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+		//Reading and deflating block, so they get their own threads rather than tying up the common pool
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+			//Only keep a bounded number of entries in flight, otherwise everything would be held in memory at once
+			int window = 4 * threads;
+			Deque<CompletableFuture<Entry>> pending = new ArrayDeque<>(window);
+			List<Entry> written = new ArrayList<>(names.size());
+			long offset = 0;
+
+			for (Iterator<Map.Entry<String, Path>> it = names.entrySet().iterator(); it.hasNext() || !pending.isEmpty();) {
+				while (it.hasNext() && pending.size() < window) {
+					Map.Entry<String, Path> file = it.next();
+					pending.add(CompletableFuture.supplyAsync(() -> read(file.getValue(), file.getKey(), compress), executor));
+				}
+
+				Entry entry;
+				try {
+					entry = pending.removeFirst().join();
+				} catch (CompletionException e) {
+					throw e.getCause() instanceof UncheckedIOException ? (UncheckedIOException) e.getCause() : e;
+				}
+
+				entry.offset = offset;
+				offset += writeLocal(out, entry);
+				entry.data = null;
+				written.add(entry);
+				if (offset > 0xFFFFFFFFL) throw new IllegalArgumentException("Contents of " + directory + " too big to pack without ZIP64");
+			}
+
+			long centralStart = offset;
+			for (Entry entry : written) {
+				offset += writeCentral(out, entry);
+			}
+
+			if (offset > 0xFFFFFFFFL) throw new IllegalStateException("Central directory of " + directory + " too far in to pack without ZIP64");
+
+			//End of central directory
+			writeInt(out, 0x06054b50);
+			writeShort(out, 0); //This disk
+			writeShort(out, 0); //Disk the central directory starts on
+			writeShort(out, written.size());
+			writeShort(out, written.size());
+			writeInt(out, (int) (offset - centralStart));
+			writeInt(out, (int) centralStart);
+			writeShort(out, 0); //Comment length
+		} catch (IOException | RuntimeException e) {
+			JkUtilsPath.deleteIfExists(temp);
+			throw new RuntimeException("Error packing " + directory + " to " + output, e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		JkUtilsPath.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static Entry read(Path file, String name, boolean compress) {
+		byte[] contents;
+		try {
+			contents = Files.readAllBytes(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading " + file, e);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(contents);
+
+		byte[] data = contents;
+		if (compress) {
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(contents.length / 2 + 64);
+
+			try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater, 8192)) {
+				deflate.write(contents);
+			} catch (IOException e) {
+				throw new AssertionError("Failed writing to memory?", e);
+			} finally {
+				deflater.end();
+			}
+
+			//Tiny or already compressed files can come out bigger, in which case they might as well be stored
+			if (out.size() < contents.length) data = out.toByteArray();
+		}
+
+		byte[] encodedName = name.getBytes(StandardCharsets.UTF_8);
+		if (encodedName.length > 0xFFFF) throw new IllegalArgumentException("Name too long to pack: " + name);
+
+		return new Entry(encodedName, data != contents, (int) crc.getValue(), contents.length, data);
+	}
+
+	private static int writeLocal(OutputStream out, Entry entry) throws IOException {
+		writeInt(out, 0x04034b50);
+		writeShort(out, 20); //Version needed to extract
+		writeCommon(out, entry);
+		writeShort(out, 0); //Extra field length
+		out.write(entry.name);
+		out.write(entry.data);
+
+		return 30 + entry.name.length + entry.compressedSize;
+	}
+
+	private static int writeCentral(OutputStream out, Entry entry) throws IOException {
+		writeInt(out, 0x02014b50);
+		writeShort(out, 20); //Version made by
+		writeShort(out, 20); //Version needed to extract
+		writeCommon(out, entry);
+		writeShort(out, 0); //Extra field length
+		writeShort(out, 0); //Comment length
+		writeShort(out, 0); //Disk number
+		writeShort(out, 0); //Internal attributes
+		writeInt(out, 0); //External attributes
+		writeInt(out, (int) entry.offset);
+		out.write(entry.name);
+
+		return 46 + entry.name.length;
+	}
+
+	private static void writeCommon(OutputStream out, Entry entry) throws IOException {
+		writeShort(out, UTF8_NAMES);
+		writeShort(out, entry.deflated ? 8 : 0);
+		writeShort(out, DOS_TIME);
+		writeShort(out, DOS_DATE);
+		writeInt(out, entry.crc);
+		writeInt(out, entry.compressedSize);
+		writeInt(out, entry.size);
+		writeShort(out, entry.name.length);
+	}
+
+	private static void writeShort(OutputStream out, int value) throws IOException {
+		out.write(value);
+		out.write(value >>> 8);
+	}
+
+	private static void writeInt(OutputStream out, int value) throws IOException {
+		writeShort(out, value);
+		writeShort(out, value >>> 16);
+	}
+}
@@ -0,0 +1,52 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import dev.jeka.core.api.system.JkLog;
+
+import mappings.LineServer;
+
+//Requests are a named class per line, each answered with a line per version of: the version then the remapped file, ? if the version has no such class,
+//or ! and the error if remapping failed; all tab separated. Each request is finished by an empty line
+public class LazySourceServer extends LineServer {
+	private final Map<String, LazySources> versions = new LinkedHashMap<>();
+
+	public LazySourceServer(Collection<Path> lazySources) {
+		super("lazy source requests");
+
+		for (Path sources : lazySources) {
+			JkLog.startTask("Loading mappings for " + sources.getFileName());
+			LazySources version = LazySources.open(sources);
+			version.preload();
+			versions.put(sources.getFileName().toString(), version);
+			JkLog.endTask();
+		}
+	}
+
+	@Override
+	public void answer(String line, Writer out) throws IOException {
+		String namedClass = line.trim();
+
+		for (Entry<String, LazySources> entry : versions.entrySet()) {
+			out.write(entry.getKey());
+			out.write('\t');
+
+			try {
+				Path remapped = entry.getValue().remap(namedClass);
+				out.write(remapped != null ? remapped.toAbsolutePath().toString() : "?");
+			} catch (RuntimeException e) {
+				JkLog.warn("Error remapping " + namedClass + " for " + entry.getKey() + ": " + e);
+				out.write("!\t");
+				out.write(String.valueOf(e).replace('\n', ' '));
+			}
+
+			out.write('\n');
+		}
+
+		out.write('\n');
+	}
+}
@@ -0,0 +1,267 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.mercury.Mercury;
+import org.cadixdev.mercury.remapper.MercuryRemapper;
+
+import dev.jeka.core.api.file.JkPathTree;
+import dev.jeka.core.api.system.JkLog;
+import dev.jeka.core.api.utils.JkUtilsPath;
+
+import net.fabricmc.tinyremapper.IMappingProvider.MappingAcceptor;
+import net.fabricmc.tinyremapper.IMappingProvider.Member;
+import net.fabricmc.tinyremapper.TinyUtils;
+
+import mappings.Hashing;
+import mappings.LorenzLoader;
+
+//A directory of remapped sources filled in a class at a time as they're asked for, rather than remapping everything up front
+public class LazySources {
+	private static final String SETTINGS = ".lazy-sources";
+	private final Path root, sources, jar, mappings;
+	private final List<Path> classpath;
+	//Kept for as long as the mappings file stays the same, so anything long running only loads them once
+	private long mappingsSize = -1;
+	private FileTime mappingsModified;
+	private MappingSet mappingSet;
+	private Map<String, String> namedToMCP;
+
+	private LazySources(Path root, Properties settings) {
+		this.root = root;
+		sources = Paths.get(settings.getProperty("sources"));
+		jar = Paths.get(settings.getProperty("jar"));
+		mappings = Paths.get(settings.getProperty("mappings"));
+
+		List<Path> classpath = new ArrayList<>();
+		for (String entry : settings.getProperty("classpath", "").split(File.pathSeparator)) {
+			if (!entry.isEmpty()) classpath.add(Paths.get(entry));
+		}
+		classpath.add(jar);
+		this.classpath = Collections.unmodifiableList(classpath);
+	}
+
+	//Remembers what the directory's sources come from, throwing out anything remapped from different inputs
+	public static void prepare(Path root, Path sources, Path jar, Collection<Path> libraries, Path mappings) {
+		Properties settings = new Properties();
+		settings.setProperty("sources", sources.toAbsolutePath().toString());
+		settings.setProperty("sourcesHash", Hashing.SHA1(sources));
+		settings.setProperty("jar", jar.toAbsolutePath().toString());
+		settings.setProperty("mappings", mappings.toAbsolutePath().toString());
+		settings.setProperty("mappingsHash", Hashing.SHA1(mappings));
+		settings.setProperty("classpath", libraries.stream().map(path -> path.toAbsolutePath().toString()).collect(Collectors.joining(File.pathSeparator)));
+
+		//Held the same as remapping is, so nothing is cleared out from under a remap still moving its results in
+		ArtifactStore.inWorkspace(root, () -> {
+			Path file = root.resolve(SETTINGS);
+			if (Files.exists(file)) {
+				if (settings.equals(readSettings(file))) return;
+
+				JkLog.info("Sources for " + root.getFileName() + " have changed, clearing lazily remapped sources");
+				JkPathTree.of(root).deleteContent();
+			}
+
+			JkUtilsPath.createDirectories(root);
+			try (OutputStream out = Files.newOutputStream(file)) {
+				settings.store(out, null);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error writing lazy sources settings to " + file, e);
+			}
+		});
+	}
+
+	private static Properties readSettings(Path file) {
+		Properties settings = new Properties();
+
+		try (InputStream in = Files.newInputStream(file)) {
+			settings.load(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading lazy sources settings from " + file, e);
+		}
+
+		return settings;
+	}
+
+	public static boolean isPrepared(Path root) {
+		return Files.isRegularFile(root.resolve(SETTINGS));
+	}
+
+	public static LazySources open(Path root) {
+		return new LazySources(root, readSettings(root.resolve(SETTINGS)));
+	}
+
+	//Gives the remapped source file for the given named class, or null if there isn't one in the sources jar
+	public Path remap(String namedClass) {
+		int inner = namedClass.indexOf('$');
+		String topLevel = (inner > 0 ? namedClass.substring(0, inner) : namedClass).replace('.', '/');
+
+		Path remapped = root.resolve(topLevel + ".java");
+		if (Files.exists(remapped)) return remapped;
+
+		//Only the sources jar knows where each class is, and it's in MCP names
+		String mcpClass = getNamedToMCP().getOrDefault(topLevel, topLevel);
+
+		ArtifactStore.inWorkspace(root, () -> {
+			if (Files.exists(remapped)) return; //Done whilst waiting
+
+			try (FileSystem zip = FileSystems.newFileSystem(sources, (ClassLoader) null)) {
+				Path source = zip.getPath(mcpClass + ".java");
+				if (Files.notExists(source)) return;
+
+				rewrite(tempSources -> {
+					Path extracted = tempSources.resolve(mcpClass + ".java");
+					JkUtilsPath.createDirectories(extracted.getParent());
+					JkUtilsPath.copy(source, extracted);
+				});
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error reading " + mcpClass + " from " + sources, e);
+			}
+		});
+
+		return Files.exists(remapped) ? remapped : null;
+	}
+
+	//Remaps everything not already asked for, returning how many files were added
+	public int remapAll() {
+		int[] added = new int[1];
+
+		ArtifactStore.inWorkspace(root, () -> {
+			added[0] = rewrite(tempSources -> {
+				try (JkPathTree jar = JkPathTree.ofZip(sources)) {
+					jar.copyTo(tempSources);
+				}
+			});
+		});
+
+		return added[0];
+	}
+
+	private int rewrite(Consumer<Path> extractor) {
+		Mercury mercury = new Mercury();
+		mercury.getClassPath().addAll(ClasspathCache.inUserHome().resolve(classpath)); //Checked each time in case a library has changed
+		mercury.getProcessors().add(MercuryRemapper.create(getMappingSet()));
+
+		Path tempSources = null, tempOutput = null;
+		try {
+			//Kept next to the output so the results can be moved straight in
+			tempSources = Files.createTempDirectory(root.getParent(), root.getFileName() + "-in");
+			tempOutput = Files.createTempDirectory(root.getParent(), root.getFileName() + "-out");
+
+			extractor.accept(tempSources);
+			mercury.rewrite(tempSources, tempOutput);
+
+			int added = 0;
+			try (Stream<Path> files = Files.walk(tempOutput)) {
+				for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+					Path target = root.resolve(tempOutput.relativize(file).toString());
+					if (Files.exists(target)) continue; //Already remapped, possibly open in an editor
+
+					JkUtilsPath.createDirectories(target.getParent());
+					Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+					added++;
+				}
+			}
+			return added;
+		} catch (Exception e) {
+			throw new RuntimeException("Error remapping sources from " + sources, e);
+		} finally {
+			for (Path temp : new Path[] {tempSources, tempOutput}) {
+				if (temp != null) {
+					JkPathTree.of(temp).deleteContent();
+					JkUtilsPath.deleteIfExists(temp);
+				}
+			}
+
+			System.gc(); //Account for JDT bug: https://github.com/CadixDev/Mercury/issues/2
+		}
+	}
+
+	//Loads everything needed to remap ahead of being asked for anything
+	public void preload() {
+		getMappingSet();
+		getNamedToMCP();
+	}
+
+	private synchronized void checkMappings() {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(mappings, BasicFileAttributes.class);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading attributes of " + mappings, e);
+		}
+
+		if (attributes.size() != mappingsSize || !attributes.lastModifiedTime().equals(mappingsModified)) {
+			//Setup has been run again since they were loaded
+			mappingSet = null;
+			namedToMCP = null;
+			mappingsSize = attributes.size();
+			mappingsModified = attributes.lastModifiedTime();
+		}
+	}
+
+	private synchronized MappingSet getMappingSet() {
+		checkMappings();
+
+		if (mappingSet == null) {
+			mappingSet = LorenzLoader.load(TinyUtils.createTinyMappingProvider(mappings, "mcp", "named"));
+		}
+
+		return mappingSet;
+	}
+
+	private synchronized Map<String, String> getNamedToMCP() {
+		checkMappings();
+
+		if (namedToMCP == null) {
+			Map<String, String> classes = new HashMap<>();
+
+			TinyUtils.createTinyMappingProvider(mappings, "named", "mcp").load(new MappingAcceptor() {
+				@Override
+				public void acceptClass(String srcName, String dstName) {
+					classes.put(srcName, dstName);
+				}
+
+				@Override
+				public void acceptMethod(Member method, String dstName) {
+				}
+
+				@Override
+				public void acceptMethodArg(Member method, int lvIndex, String dstName) {
+				}
+
+				@Override
+				public void acceptMethodVar(Member method, int lvIndex, int startOpIdx, int asmIndex, String dstName) {
+				}
+
+				@Override
+				public void acceptField(Member field, String dstName) {
+				}
+			});
+
+			namedToMCP = classes;
+		}
+
+		return namedToMCP;
+	}
+}
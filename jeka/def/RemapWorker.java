@@ -0,0 +1,117 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.mercury.Mercury;
+import org.cadixdev.mercury.remapper.MercuryRemapper;
+
+import dev.jeka.core.api.file.JkPathTree;
+import dev.jeka.core.api.utils.JkUtilsPath;
+
+import net.fabricmc.tinyremapper.TinyUtils;
+
+import mappings.LorenzLoader;
+
+//Remaps sources jars with Mercury, either directly or as a separate JVM taking jobs from RemapWorkerPool over standard in
+public class RemapWorker {
+	static final String JOB = "remap", DONE = "done", FAILED = "failed";
+
+	public static void main(String[] args) throws IOException {
+		//Anything JDT (or anything else) prints would get mixed up with the replies, so only the replies get to go to standard out
+		PrintStream replies = new PrintStream(System.out, true, "UTF-8");
+		System.setOut(System.err);
+
+		//Loading the mappings blocks on reading the file, so it gets its own thread rather than the common pool's
+		ExecutorService loader = Executors.newSingleThreadExecutor();
+		try {
+			serve(replies, loader);
+		} finally {
+			loader.shutdown();
+		}
+	}
+
+	private static void serve(PrintStream replies, ExecutorService loader) throws IOException {
+		BufferedReader jobs = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		for (String line = jobs.readLine(); line != null; line = jobs.readLine()) {
+			String[] job = line.split("\t", -1);
+
+			if (job.length != 6 || !JOB.equals(job[0])) {
+				replies.println(FAILED + "\tUnexpected job: " + line);
+				continue;
+			}
+
+			try {
+				Path input = Paths.get(job[1]);
+				Path mappingFile = Paths.get(job[2]);
+				Path output = Paths.get(job[3]);
+				boolean compress = Boolean.parseBoolean(job[4]);
+
+				List<Path> classpath = new ArrayList<>();
+				for (String entry : job[5].split(File.pathSeparator)) {
+					if (!entry.isEmpty()) classpath.add(Paths.get(entry));
+				}
+
+				CompletableFuture<MappingSet> mappings = CompletableFuture.supplyAsync(() -> {
+					return LorenzLoader.load(TinyUtils.createTinyMappingProvider(mappingFile, "mcp", "named"));
+				}, loader);
+				remap(input, () -> classpath, mappings::join, output, compress);
+
+				replies.println(DONE);
+			} catch (Throwable t) {
+				t.printStackTrace();
+				replies.println(FAILED + '\t' + String.valueOf(t).replace('\n', ' '));
+			}
+		}
+	}
+
+	//Extracts the sources whilst the classpath and mappings are still being readied
+	static void remap(Path input, Supplier<List<Path>> classpath, Supplier<MappingSet> mappings, Path output, boolean compress) {
+		JkUtilsPath.deleteIfExists(output);
+
+		Mercury mercury = new Mercury();
+		Path tempSources = JkUtilsPath.createTempDirectory(input.getFileName().toString());
+		try {
+			try (JkPathTree jar = JkPathTree.ofZip(input)) {
+				jar.copyTo(tempSources);
+			}
+
+			mercury.getClassPath().addAll(classpath.get());
+			mercury.getProcessors().add(MercuryRemapper.create(mappings.get()));
+		} catch (RuntimeException e) {
+			JkPathTree.of(tempSources).deleteContent();
+			JkUtilsPath.deleteIfExists(tempSources);
+			throw new RuntimeException("Error preparing to remap " + input, e instanceof CompletionException ? e.getCause() : e);
+		}
+
+		//Mercury writes out a file at a time, so let it write to a directory then pack that all at once
+		Path tempOutput = JkUtilsPath.createTempDirectory(output.getFileName().toString());
+		try {
+			mercury.rewrite(tempSources, tempOutput);
+		} catch (Exception e) {
+			throw new RuntimeException("Error remapping Forge jar", e);
+		} finally {
+			JkPathTree.of(tempSources).deleteContent();
+			JkUtilsPath.deleteIfExists(tempSources);
+		}
+
+		try {
+			JarWriter.pack(tempOutput, output, compress);
+		} finally {
+			JkPathTree.of(tempOutput).deleteContent();
+			JkUtilsPath.deleteIfExists(tempOutput);
+		}
+	}
+}
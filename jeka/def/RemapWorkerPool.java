@@ -0,0 +1,179 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import dev.jeka.core.api.system.JkLog;
+
+//Hands sources remapping out to separate JVMs, so JDT's memory (leaked or not) never ends up in the build's own heap
+public class RemapWorkerPool implements AutoCloseable {
+	private static class Worker {
+		final Process process;
+		final PrintWriter jobs;
+		//Read on a separate thread so waiting for a reply can give up, an empty reply is the worker having exited
+		final BlockingQueue<Optional<String>> replies = new LinkedBlockingQueue<>();
+		int done;
+
+		Worker(Process process) {
+			this.process = process;
+			jobs = new PrintWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8), true);
+
+			Thread reader = new Thread(() -> {
+				try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+					for (String line = in.readLine(); line != null; line = in.readLine()) {
+						replies.add(Optional.of(line));
+					}
+				} catch (IOException e) {
+					//Worker was destroyed mid-reply, which is no different to it exiting
+				}
+				replies.add(Optional.empty());
+			}, "Remap worker replies");
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		void stop() {
+			jobs.close(); //Worker finishes once it runs out of input
+
+			try {
+				if (!process.waitFor(10, TimeUnit.SECONDS)) process.destroyForcibly();
+			} catch (InterruptedException e) {
+				process.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private final List<String> command;
+	private final int jobsPerWorker;
+	private final long timeout;
+	//Workers are only started when there's nothing idle to use, so there's never more JVMs than jobs running at once
+	private final Semaphore slots;
+	private final Queue<Worker> idle = new ConcurrentLinkedQueue<>();
+	private volatile boolean closed;
+
+	//A timeout of 0 (or less) waits as long as each job takes
+	public RemapWorkerPool(int workers, int jobsPerWorker, long timeout, TimeUnit unit, Collection<String> jvmOptions) {
+		if (workers < 1) throw new IllegalArgumentException("Need at least one worker: " + workers);
+		this.jobsPerWorker = Math.max(1, jobsPerWorker);
+		this.timeout = unit.toMillis(timeout);
+
+		command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(jvmOptions);
+		command.add("-cp");
+		command.add(currentClasspath());
+		command.add(RemapWorker.class.getName());
+
+		slots = new Semaphore(workers);
+	}
+
+	//The build's classes are loaded by jeka rather than from the JVM's classpath, so it has to be pieced back together from the loaders
+	private static String currentClasspath() {
+		Set<String> entries = new LinkedHashSet<>();
+
+		for (ClassLoader loader = RemapWorker.class.getClassLoader(); loader != null; loader = loader.getParent()) {
+			if (loader instanceof URLClassLoader) {
+				for (URL url : ((URLClassLoader) loader).getURLs()) {
+					try {
+						entries.add(Paths.get(url.toURI()).toString());
+					} catch (URISyntaxException | IllegalArgumentException e) {
+						JkLog.trace("Skipping classpath entry which isn't a file: " + url);
+					}
+				}
+			}
+		}
+		entries.addAll(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+
+		return entries.stream().filter(entry -> !entry.isEmpty()).collect(Collectors.joining(File.pathSeparator));
+	}
+
+	private Worker start() {
+		try {
+			//JkJavaProcess only runs things to completion, there's no way to keep talking to what it starts
+			return new Worker(new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error starting remap worker", e);
+		}
+	}
+
+	public void remap(Path input, List<Path> classpath, Path mappingFile, Path output, boolean compress) {
+		try {
+			slots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for a remap worker", e);
+		}
+
+		Worker worker = null;
+		boolean reusable = false;
+		try {
+			if (closed) throw new IllegalStateException("Remap worker pool has been closed");
+			while ((worker = idle.poll()) != null && !worker.process.isAlive()) worker.stop();
+			if (worker == null) worker = start();
+
+			worker.jobs.println(String.join("\t", RemapWorker.JOB, input.toAbsolutePath().toString(), mappingFile.toAbsolutePath().toString(),
+					output.toAbsolutePath().toString(), Boolean.toString(compress),
+					classpath.stream().map(path -> path.toAbsolutePath().toString()).collect(Collectors.joining(File.pathSeparator))));
+
+			Optional<String> response = timeout > 0 ? worker.replies.poll(timeout, TimeUnit.MILLISECONDS) : worker.replies.take();
+			if (response == null) {
+				//Stuck (or just far too slow), either way the worker can't be trusted with anything else
+				worker.process.destroyForcibly();
+				throw new IllegalStateException("Remap worker took longer than " + timeout + "ms remapping " + input);
+			}
+			if (!response.isPresent()) throw new IllegalStateException("Remap worker exited whilst remapping " + input);
+
+			String reply = response.get();
+			if (reply.startsWith(RemapWorker.FAILED)) throw new RuntimeException("Error remapping " + input + ": " + reply.substring(RemapWorker.FAILED.length()).trim());
+			assert RemapWorker.DONE.equals(reply): "Unexpected reply from remap worker: " + reply;
+
+			//Whatever JDT has leaked is thrown away with the whole JVM once it's done enough
+			reusable = ++worker.done < jobsPerWorker;
+		} catch (InterruptedException e) {
+			worker.process.destroyForcibly();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for remap worker to finish " + input, e);
+		} finally {
+			if (reusable && !closed) {
+				idle.add(worker);
+			} else if (worker != null) {
+				worker.stop();
+			}
+
+			slots.release();
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+
+		for (Worker worker = idle.poll(); worker != null; worker = idle.poll()) {
+			worker.stop();
+		}
+	}
+}
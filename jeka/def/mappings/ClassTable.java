@@ -0,0 +1,102 @@
+package mappings;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Spliterator;
+
+import net.fabricmc.tinyremapper.asm.commons.Remapper;
+
+import mappings.MappingReader.ClassMapping;
+
+public class ClassTable extends AbstractCollection<ClassMapping> {
+	private static final Namespace[] NAMESPACES = Namespace.values();
+	private final ClassMapping[] classes;
+	private final int mask;
+	//Open addressed with linear probing, each slot holds the index into classes plus one so 0 can mean empty
+	private final int[][] indexes = new int[NAMESPACES.length][];
+	private final Remapper[][] remappers = new Remapper[NAMESPACES.length][NAMESPACES.length];
+
+	ClassTable(Collection<ClassMapping> classes) {
+		this.classes = classes.toArray(new ClassMapping[0]);
+
+		int capacity = Integer.highestOneBit(Math.max(this.classes.length, 1)) << 2; //Keeps the load factor between a quarter and a half
+		mask = capacity - 1;
+
+		for (Namespace namespace : NAMESPACES) {
+			int[] slots = indexes[namespace.ordinal()] = new int[capacity];
+
+			for (int i = 0; i < this.classes.length; i++) {
+				String name = nameOf(namespace, this.classes[i]);
+				if (name == null) continue;
+
+				for (int slot = hash(name) & mask;; slot = slot + 1 & mask) {
+					if (slots[slot] == 0) {
+						slots[slot] = i + 1;
+						break;
+					} else if (name.equals(nameOf(namespace, this.classes[slots[slot] - 1]))) {
+						break; //Shared name, first come first served
+					}
+				}
+			}
+		}
+	}
+
+	public static ClassTable of(Collection<ClassMapping> classes) {
+		return classes instanceof ClassTable ? (ClassTable) classes : new ClassTable(classes);
+	}
+
+	static String nameOf(Namespace namespace, ClassMapping mapping) {
+		//Classes MCP doesn't rename are left null until writing, when they're given their SRG name
+		return namespace == Namespace.MCP && mapping.mcp == null ? mapping.srg : namespace.get(mapping);
+	}
+
+	private static int hash(String name) {
+		int hash = name.hashCode();
+		return hash ^ hash >>> 16;
+	}
+
+	public ClassMapping get(Namespace namespace, String name) {
+		int[] slots = indexes[namespace.ordinal()];
+
+		for (int slot = hash(name) & mask, index; (index = slots[slot]) != 0; slot = slot + 1 & mask) {
+			ClassMapping mapping = classes[index - 1];
+			if (name.equals(nameOf(namespace, mapping))) return mapping;
+		}
+
+		return null;
+	}
+
+	public Remapper remapper(Namespace from, Namespace to) {
+		Remapper remapper = remappers[from.ordinal()][to.ordinal()];
+
+		if (remapper == null) {
+			remappers[from.ordinal()][to.ordinal()] = remapper = new Remapper() {
+				@Override
+				public String map(String internalName) {
+					ClassMapping mapping = get(from, internalName);
+					String name;
+					return mapping != null && (name = nameOf(to, mapping)) != null ? name : internalName;
+				}
+			};
+		}
+
+		return remapper;
+	}
+
+	@Override
+	public Iterator<ClassMapping> iterator() {
+		return Arrays.asList(classes).iterator();
+	}
+
+	@Override
+	public Spliterator<ClassMapping> spliterator() {
+		return Arrays.spliterator(classes); //Splits evenly for parallel streams, unlike the default iterator based one
+	}
+
+	@Override
+	public int size() {
+		return classes.length;
+	}
+}
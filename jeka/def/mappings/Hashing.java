@@ -1,6 +1,9 @@
+package mappings;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
@@ -33,4 +36,8 @@ public class Hashing {
 
 		return JkUtilsString.toHexString(hasher.digest());
 	}
+
+	public static String SHA1(String text) {
+		return JkUtilsString.toHexString(getSHA1().digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package mappings;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import dev.jeka.core.api.system.JkLog;
+
+//Answers requests a line at a time until told to quit, either over standard in/out or to any number of local connections at once
+public abstract class LineServer {
+	private final String description;
+
+	protected LineServer(String description) {
+		this.description = description;
+	}
+
+	public abstract void answer(String line, Writer out) throws IOException;
+
+	public void serve(BufferedReader in, Writer out) throws IOException {
+		for (String line = in.readLine(); line != null && !"quit".equals(line); line = in.readLine()) {
+			if (line.trim().isEmpty()) continue;
+
+			answer(line, out);
+			out.flush();
+		}
+	}
+
+	public void serve(int port) throws IOException {
+		ExecutorService clients = Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(task, "Client for " + description);
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			JkLog.info("Answering " + description + " on " + server.getLocalSocketAddress());
+
+			while (true) {
+				Socket client = server.accept();
+
+				clients.execute(() -> {
+					try (Socket socket = client; BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+							Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+						serve(in, out);
+					} catch (IOException e) {
+						JkLog.warn("Error answering " + description + " for " + client.getRemoteSocketAddress() + ": " + e);
+					}
+				});
+			}
+		} finally {
+			clients.shutdownNow();
+		}
+	}
+
+	public void serveStandardIO() {
+		try {
+			serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error answering " + description, e);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package mappings;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.impl.MappingSetModelFactoryImpl;
+import org.cadixdev.lorenz.impl.model.MethodMappingImpl;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.MethodParameterMapping;
+
+import dev.jeka.core.api.utils.JkUtilsString;
+
+import net.fabricmc.tinyremapper.IMappingProvider;
+import net.fabricmc.tinyremapper.IMappingProvider.MappingAcceptor;
+import net.fabricmc.tinyremapper.IMappingProvider.Member;
+import net.fabricmc.tinyremapper.asm.Type;
+
+public class LorenzLoader {
+	//Every accessor of MethodMappingImpl's own parameter array is overridden, so it's never filled (or grown) and only this one is used
+	private static class SizedMethodMapping extends MethodMappingImpl {
+		private MethodParameterMapping[] parameters;
+
+		SizedMethodMapping(ClassMapping<?, ?> parent, MethodSignature signature, String deobfuscatedName) {
+			super(parent, signature, deobfuscatedName);
+
+			//Tiny parameters are indexed by LVT slot rather than argument position, so size for the worst case of an instance method
+			parameters = new MethodParameterMapping[Type.getArgumentsAndReturnSizes(signature.getDescriptor().toString()) >> 2];
+		}
+
+		@Override
+		public MethodParameterMapping createParameterMapping(int index, String deobfuscatedName) {
+			if (index < 0) throw new IllegalArgumentException("Negative parameter index " + index + " for " + getFullObfuscatedName() + getObfuscatedDescriptor());
+			//Only a malformed mapping has a slot past the method's arguments, but those have always been kept rather than failing the whole load
+			if (index >= parameters.length) parameters = Arrays.copyOf(parameters, index + 1);
+
+			return parameters[index] = getMappings().getModelFactory().createMethodParameterMapping(this, index, deobfuscatedName);
+		}
+
+		@Override
+		public Optional<MethodParameterMapping> getParameterMapping(int index) {
+			return index < parameters.length ? Optional.ofNullable(parameters[index]) : Optional.empty();
+		}
+
+		@Override
+		public Collection<MethodParameterMapping> getParameterMappings() {
+			return Collections.unmodifiableList(Arrays.stream(parameters).filter(Objects::nonNull).collect(Collectors.toList()));
+		}
+
+		@Override
+		public boolean hasParameterMapping(int index) {
+			return index < parameters.length && parameters[index] != null;
+		}
+
+		@Override
+		public boolean hasMappings() {
+			return hasDeobfuscatedName() || Arrays.stream(parameters).anyMatch(parameter -> parameter != null && parameter.hasMappings());
+		}
+	}
+
+	private static class SizedModelFactory extends MappingSetModelFactoryImpl {
+		@Override
+		@SuppressWarnings("rawtypes")
+		public MethodMapping createMethodMapping(ClassMapping parent, MethodSignature signature, String deobfuscatedName) {
+			return new SizedMethodMapping(parent, signature, deobfuscatedName);
+		}
+	}
+
+	public static MappingSet load(ClassTable table, Namespace from, Namespace to) {
+		return load(new TableMappingProvider(table, from, to));
+	}
+
+	public static MappingSet load(IMappingProvider provider) {
+		MappingSet mappings = MappingSet.create(new SizedModelFactory());
+
+		provider.load(new MappingAcceptor() {
+			private boolean allPresent(Member member) {
+				return !JkUtilsString.isBlank(member.owner) && !JkUtilsString.isBlank(member.name) && !JkUtilsString.isBlank(member.desc);
+			}
+
+			@Override
+			public void acceptClass(String srcName, String dstName) {
+				assert !JkUtilsString.isBlank(srcName) && !JkUtilsString.isBlank(dstName);
+				mappings.getOrCreateClassMapping(srcName).setDeobfuscatedName(dstName);
+			}
+
+			@Override
+			public void acceptMethod(Member method, String dstName) {
+				assert allPresent(method) && !JkUtilsString.isBlank(dstName);
+				mappings.getOrCreateClassMapping(method.owner).getOrCreateMethodMapping(method.name, method.desc).setDeobfuscatedName(dstName);
+			}
+
+			@Override
+			public void acceptMethodArg(Member method, int lvIndex, String dstName) {
+				assert allPresent(method) && !JkUtilsString.isBlank(dstName);
+				mappings.getOrCreateClassMapping(method.owner).getOrCreateMethodMapping(method.name, method.desc).createParameterMapping(lvIndex, dstName);
+			}
+
+			@Override
+			public void acceptMethodVar(Member method, int lvIndex, int startOpIndex, int asmIndex, String dstName) {
+				//Lorenz has no notion of local variables
+			}
+
+			@Override
+			public void acceptField(Member field, String dstName) {
+				assert allPresent(field) && !JkUtilsString.isBlank(dstName);
+				mappings.getOrCreateClassMapping(field.owner).getOrCreateFieldMapping(field.name, field.desc).setDeobfuscatedName(dstName);
+			}
+		});
+
+		return mappings;
+	}
+}
@@ -6,27 +6,54 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import dev.jeka.core.api.file.JkPathTree;
+import dev.jeka.core.api.system.JkLog;
 
+import net.fabricmc.tinyremapper.asm.Opcodes;
 import net.fabricmc.tinyremapper.asm.Type;
 import net.fabricmc.tinyremapper.asm.commons.Remapper;
 
 import mappings.MappingReader.ClassMapping;
+import mappings.MappingReader.MethodMapping;
 
 public class MCPMerger {
+	private static final Path FORGE_GRADLE_CACHE = Paths.get(System.getProperty("user.home"), ".gradle", "caches", "forge_gradle");
+	//Tables written during this run, so anything else wanting them can skip parsing the file back in
+	private static class Merged {
+		final FileTime modified;
+		final long size;
+		final ClassTable table;
+
+		Merged(BasicFileAttributes attributes, ClassTable table) {
+			modified = attributes.lastModifiedTime();
+			size = attributes.size();
+			this.table = table;
+		}
+
+		boolean matches(BasicFileAttributes attributes) {
+			return modified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+		}
+	}
+	private static final Map<Path, Merged> MERGED = new ConcurrentHashMap<>();
+
 	static String getMethodIndex(String function) {
 		if (!function.startsWith("func_")) {
 			assert !"<init>".equals(function);
@@ -39,7 +66,40 @@ public class MCPMerger {
 	}
 
 	public static void mergeFrom(Path allYarn, String mcpConfig, String mcp, Path yarnSrg, Path mcpYarn, Path output) {
-		Path mcpCache = Paths.get(System.getProperty("user.home"), ".gradle", "caches", "forge_gradle", "maven_downloader", "de", "oceanlabs", "mcp");
+		Path forgeJar = findForgeJar(mcpConfig, mcp);
+		if (forgeJar == null) throw new IllegalStateException("Unable to find recompiled Forge jar for " + mcpConfig + " with " + mcp + ", which is needed to tell static methods apart");
+		mergeFrom(allYarn, mcpConfig, mcp, yarnSrg, mcpYarn, forgeJar, output);
+	}
+
+	//ForgeGradle keeps the recompiled (MCP named) jar for each Forge version and mappings pair in its user repo
+	static Path findForgeJar(String mcpConfig, String mcp) {
+		Path forgeRepo = FORGE_GRADLE_CACHE.resolve("minecraft_user_repo/net/minecraftforge/forge");
+		if (!Files.isDirectory(forgeRepo)) return null;
+
+		int split = mcpConfig.indexOf('-');
+		String mcVersion = split > 0 ? mcpConfig.substring(0, split) : mcpConfig;
+		String mapped = "_mapped_" + mcp;
+
+		try (Stream<Path> versions = Files.list(forgeRepo)) {
+			return versions.filter(version -> {
+				String name = version.getFileName().toString();
+				return name.startsWith(mcVersion + '-') && name.endsWith(mapped);
+			}).map(version -> version.resolve("forge-" + version.getFileName() + "-recomp.jar")).filter(Files::isRegularFile).max(Comparator.comparing(jar -> {
+				try {
+					return Files.getLastModifiedTime(jar); //Most likely to be the one just used if there's more than one Forge version
+				} catch (IOException e) {
+					throw new UncheckedIOException("Error reading modification time of " + jar, e);
+				}
+			})).orElse(null);
+		} catch (IOException | UncheckedIOException e) {
+			JkLog.warn("Unable to look for Forge jars in " + forgeRepo + ": " + e);
+			return null;
+		}
+	}
+
+	//The Forge jar is used for its class hierarchy (in MCP names) to give overriding methods parameter names, and for which methods are static
+	public static void mergeFrom(Path allYarn, String mcpConfig, String mcp, Path yarnSrg, Path mcpYarn, Path forgeJar, Path output) {
+		Path mcpCache = FORGE_GRADLE_CACHE.resolve("maven_downloader/de/oceanlabs/mcp");
 		if (!Files.isReadable(mcpCache) || !Files.isDirectory(mcpCache)) {
 			throw new RuntimeException("Unable to find mcpCache (wasn't at " + mcpCache + ')');
 		}
@@ -69,61 +129,108 @@ public class MCPMerger {
 			throw new IllegalStateException("Unexpected MCP mappings channel: " + mcpChannel + " (with version " + mcpVersion + ')');
 		}
 
+		//Scanning the jar (when it's not cached) doesn't need the table, so it can happen whilst the mappings are read
+		CompletableFuture<MethodMetadata> metadata = CompletableFuture.supplyAsync(() -> MethodMetadata.read(forgeJar, MethodMetadata.defaultCache()));
+
 		AtomicBoolean escapedNames = new AtomicBoolean();
-		Collection<ClassMapping> table = MappingReader.buildTable(allYarn, yarnSrg, mcpYarn, escapedNames);
+		ClassTable table = MappingReader.buildTable(allYarn, yarnSrg, mcpYarn, escapedNames);
+		Remapper srgToYarn = table.remapper(Namespace.SRG, Namespace.YARN);
+
+		MethodMetadata access;
+		try {
+			access = metadata.join();
+		} catch (CompletionException e) {
+			throw new RuntimeException("Error reading method access from " + forgeJar, e.getCause());
+		}
+		JkLog.info("Read access for " + access.size() + " methods from " + forgeJar.getFileName());
+		Map<MethodMapping, Boolean> staticMethods = findStaticMethods(table, access);
 
-		Remapper srgToYarn = new Remapper() {
-			private final Map<String, String> yarnToSRG = table.stream().collect(Collectors.toMap(mapping -> mapping.srg, mapping -> mapping.yarn));
+		Entry<BiFunction<ClassMapping, MethodMapping, String[]>, BiFunction<ClassMapping, MethodMapping, String[]>> factories = extractParameters(mcpConfigZip, mcpZip, srgToYarn, staticMethods);
+		BiFunction<ClassMapping, MethodMapping, String[]> srgParameterFactory = factories.getKey();
+		BiFunction<ClassMapping, MethodMapping, String[]> mcpParameterFactory = factories.getValue();
 
-			@Override
-			public String map(String internalName) {
-				return yarnToSRG.getOrDefault(internalName, internalName);
-			}
-		};
+		MappingValidator.Report report = MappingValidator.validate(table, srgParameterFactory, mcpParameterFactory);
+
+		int propagated = ParameterPropagator.propagate(table, forgeJar);
+		JkLog.info("Propagated parameter names to " + propagated + " overriding methods");
 
-		Entry<BiFunction<String, String, String[]>, BiFunction<String, String, String[]>> factories = extractParameters(mcpConfigZip, mcpZip, srgToYarn);
-		BiFunction<String, String, String[]> srgParameterFactory = factories.getKey();
-		BiFunction<String, String, String[]> mcpParameterFactory = factories.getValue();
+		MappingValidator.checkParameters(table, report);
+		if (report.isClean()) {
+			JkLog.info("Mappings validated without issue");
+		} else {
+			JkLog.warn("Mapping validation found " + report);
+			report.forEach((issue, entry) -> JkLog.trace(issue.description + ": " + entry));
+		}
+
+		JkLog.info("Mapping string pool: " + StringPool.stats());
+		MappingWriter.writeTable(output, table, escapedNames.get());
 
-		MappingWriter.writeTable(output, table, escapedNames.get(), srgParameterFactory, mcpParameterFactory);
+		try {
+			MERGED.put(output.toAbsolutePath().normalize(), new Merged(Files.readAttributes(output, BasicFileAttributes.class), table));
+		} catch (IOException e) {
+			JkLog.warn("Unable to keep merged table for " + output + ": " + e);
+		}
 	}
 
-	private static Entry<BiFunction<String, String, String[]>, BiFunction<String, String, String[]>> extractParameters(Path mcpConfig, Path mcpZip, Remapper remapper) {
-		Map<String, List<String>> parameters = extractParameters(mcpZip);
-		Set<String> staticMethods = new HashSet<>();
-		Map<String, String> constructors = new HashMap<>();
+	public static ClassTable getMerged(Path output) {
+		Merged merged = MERGED.get(output.toAbsolutePath().normalize());
+		if (merged == null) return null;
 
-		try (JkPathTree tree = JkPathTree.ofZip(mcpConfig)) {
-			try (BufferedReader reader = Files.newBufferedReader(tree.get("config/static_methods.txt"))) {
-				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-					staticMethods.add(line);
+		try {
+			//Only trust it if the file hasn't been changed since it was written
+			if (merged.matches(Files.readAttributes(output, BasicFileAttributes.class))) return merged.table;
+		} catch (IOException e) {
+			//Can't tell if it has changed, so play safe and have the file read again
+		}
+
+		MERGED.remove(output.toAbsolutePath().normalize(), merged);
+		return null;
+	}
+
+	//Lets go of every table kept from merging, once nothing left in the run will want them
+	public static void releaseMerged() {
+		MERGED.clear();
+	}
+
+	//Whether each method is static, going from the access it has in the (MCP named) jar, anything not in the jar is left out
+	private static Map<MethodMapping, Boolean> findStaticMethods(ClassTable table, MethodMetadata metadata) {
+		Remapper yarnToMCP = table.remapper(Namespace.YARN, Namespace.MCP);
+		Map<MethodMapping, Boolean> staticMethods = new IdentityHashMap<>(); //Each entry is already unique to its owner, name and descriptor
+		int missing = 0;
+
+		for (ClassMapping classMapping : table) {
+			String owner = ClassTable.nameOf(Namespace.MCP, classMapping);
+			if (owner == null) continue;
+
+			for (MethodMapping methodMapping : classMapping.getMethods()) {
+				if ("<init>".equals(methodMapping.yarn)) {
+					staticMethods.put(methodMapping, Boolean.FALSE); //Constructors are never static
+					continue;
 				}
+				if (methodMapping.srg == null) continue;
 
-				staticMethods.add("main"); //net/minecraft/server/MinecraftServer#main and net/minecraft/client/main/Main#main
-				staticMethods.add("valueOf"); //net/minecraft/client/util/TextFormat#valueOf
-				staticMethods.add("wrapScreenError"); //net/minecraft/client/gui/screen/Screen#wrapScreenError
-				staticMethods.add("isCut"); //net/minecraft/client/gui/screen/Screen#isCut
-				staticMethods.add("isPaste"); //net/minecraft/client/gui/screen/Screen#isPaste
-				staticMethods.add("isSelectAll"); //net/minecraft/client/gui/screen/Screen#isSelectAll
-				staticMethods.add("isCopy"); //net/minecraft/client/gui/screen/Screen#isCopy
-				staticMethods.add("innerBlit"); //net/minecraft/client/gui/DrawableHelper#innerBlit
-				staticMethods.add("blit"); //net/minecraft/client/gui/DrawableHelper#blit
-				staticMethods.add("fill"); //net/minecraft/client/gui/DrawableHelper#fill
-				staticMethods.add("getErrorString"); //com/mojang/blaze3d/platform/GLX#getErrorString
-				staticMethods.add("_shouldClose"); //com/mojang/blaze3d/platform/GLX#_shouldClose
-				staticMethods.add("make"); //com/mojang/blaze3d/platform/GLX#make
-				staticMethods.add("_init"); //com/mojang/blaze3d/platform/GLX#_init
-				staticMethods.add("_getRefreshRate"); //com/mojang/blaze3d/platform/GLX#_getRefreshRate
-				staticMethods.add("_renderCrosshair"); //com/mojang/blaze3d/platform/GLX#_renderCrosshair
-				staticMethods.add("_setGlfwErrorCallback"); //com/mojang/blaze3d/platform/GLX#_setGlfwErrorCallback
-
-				staticMethods.add("ortho"); //com/mojang/blaze3d/systems/RenderSystem#ortho
-				staticMethods.add("translated"); //com/mojang/blaze3d/systems/RenderSystem#translated
-				staticMethods.add("scaled"); //com/mojang/blaze3d/systems/RenderSystem#scaled
-			} catch (IOException e) {
-				throw new RuntimeException("Error reading static methods file from " + mcpConfig, e);
+				//Validation hasn't filled in the missing MCP names yet, which will be the SRG names
+				String name = methodMapping.mcp != null ? methodMapping.mcp : methodMapping.srg;
+				Integer access = metadata.getAccess(owner, name, yarnToMCP.mapMethodDesc(methodMapping.yarnDesc));
+
+				if (access != null) {
+					staticMethods.put(methodMapping, (access & Opcodes.ACC_STATIC) != 0);
+				} else {
+					missing++;
+				}
 			}
+		}
 
+		if (missing > 0) JkLog.trace("Unable to find " + missing + " methods in the Forge jar, their parameters will be left out");
+		return staticMethods;
+	}
+
+	//Each factory gives null for methods that aren't in the Forge jar, as there's no knowing which slot their parameters start from
+	private static Entry<BiFunction<ClassMapping, MethodMapping, String[]>, BiFunction<ClassMapping, MethodMapping, String[]>> extractParameters(Path mcpConfig, Path mcpZip, Remapper remapper, Map<MethodMapping, Boolean> staticMethods) {
+		Map<String, List<String>> parameters = extractParameters(mcpZip);
+		Map<String, String> constructors = new HashMap<>();
+
+		try (JkPathTree tree = JkPathTree.ofZip(mcpConfig)) {
 			try (BufferedReader reader = Files.newBufferedReader(tree.get("config/constructors.txt"))) {
 				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
 					int split = line.indexOf(' ');
@@ -144,15 +251,18 @@ public class MCPMerger {
 			}
 		}
 
-		return new SimpleImmutableEntry<>((name, desc) -> {
-			Type[] types = Type.getArgumentTypes(desc);
+		return new SimpleImmutableEntry<>((owner, method) -> {
+			Type[] types = Type.getArgumentTypes(method.yarnDesc);
 			if (types.length < 1) return new String[0];
 
-			String index = name.startsWith("<init>") ? constructors.get(name.substring(6) + desc) : getMethodIndex(name);
+			Boolean isStatic = staticMethods.get(method);
+			if (isStatic == null) return null;
+
+			String index = "<init>".equals(method.srg) ? constructors.get(owner.srg + method.yarnDesc) : getMethodIndex(method.srg);
 			assert index != null;
 			List<String> params = new ArrayList<>();
 
-			for (int i = 0, arg = staticMethods.contains(name) ? 0 : 1; i < types.length; arg += types[i++].getSize()) {
+			for (int i = 0, arg = isStatic ? 0 : 1; i < types.length; arg += types[i++].getSize()) {
 				assert arg == params.size() || params.size() + 1 == arg;
 				if (params.size() < arg) params.add(null);
 
@@ -160,14 +270,17 @@ public class MCPMerger {
 			}
 
 			return params.toArray(new String[0]);
-		}, (name, desc) -> {
-			String index = name.startsWith("<init>") ? constructors.get(name.substring(6) + desc) : getMethodIndex(name);
+		}, (owner, method) -> {
+			Boolean isStatic = staticMethods.get(method);
+			if (isStatic == null) return null;
+
+			String index = "<init>".equals(method.srg) ? constructors.get(owner.srg + method.yarnDesc) : getMethodIndex(method.srg);
 			assert index != null;
 
-			Type[] types = Type.getArgumentTypes(desc);
-			List<String> params = parameters.getOrDefault(index, new ArrayList<>());
+			Type[] types = Type.getArgumentTypes(method.yarnDesc);
+			List<String> params = new ArrayList<>(parameters.getOrDefault(index, Collections.emptyList())); //Copied as validation calls this in parallel
 
-			for (int i = 0, arg = staticMethods.contains(name) ? 0 : 1; i < types.length; arg += types[i++].getSize()) {
+			for (int i = 0, arg = isStatic ? 0 : 1; i < types.length; arg += types[i++].getSize()) {
 				while (params.size() <= arg) params.add(null);
 
 				if (params.get(arg) == null) {
@@ -191,13 +304,13 @@ public class MCPMerger {
 				assert split > 0;
 
 				String parameterName = line.substring(0, split++);
-				String name = line.substring(split, line.indexOf(',', split));
+				String name = StringPool.intern(line.substring(split, line.indexOf(',', split)));
 
 				assert parameterName.startsWith("p_") && parameterName.endsWith("_");
 				split = parameterName.indexOf('_', 2);
 				assert split > 0;
 
-				String srgIndex = parameterName.substring(0, split); //Assert might not hold in future if deobf'd SRG names gain MCP parameter names
+				String srgIndex = StringPool.intern(parameterName.substring(0, split)); //Assert might not hold in future if deobf'd SRG names gain MCP parameter names
 				assert srgIndex.chars().skip(srgIndex.charAt(2) == 'i' ? 3 : 2).allMatch(Character::isDigit): "Unexpected non-numerical digit in " + srgIndex;
 				List<String> args = out.computeIfAbsent(srgIndex, k -> new ArrayList<>());
 
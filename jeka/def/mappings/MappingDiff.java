@@ -0,0 +1,507 @@
+package mappings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+import net.fabricmc.tinyremapper.asm.commons.Remapper;
+
+import mappings.MappingReader.ClassMapping;
+import mappings.MappingReader.DescriptedMapping;
+import mappings.MappingReader.Mapping;
+import mappings.MappingReader.MethodMapping;
+
+public class MappingDiff {
+	public enum Kind {
+		CLASS, METHOD, FIELD, PARAMETER;
+	}
+
+	public interface Listener {
+		void added(Kind kind, String owner, String key);
+
+		void removed(Kind kind, String owner, String key);
+
+		void renamed(Kind kind, Namespace namespace, String owner, String key, String from, String to);
+	}
+
+	private static final Namespace[] NAMESPACES = Namespace.values();
+	private static final Namespace[] PARAMETER_NAMESPACES = {Namespace.YARN, Namespace.SRG, Namespace.MCP};
+
+	//Only as much of a class (or member) as is compared, without building (and interning) a whole table for it
+	private static class Entry {
+		final String[] names = new String[NAMESPACES.length]; //By namespace, null where there isn't a name
+		final String desc; //In Yarn names, null for classes
+		final List<Entry> methods = new ArrayList<>(), fields = new ArrayList<>();
+		final SortedMap<Integer, String[]> parameters = new TreeMap<>(); //Slot to names by namespace
+
+		Entry(String desc) {
+			this.desc = desc;
+		}
+
+		String get(Namespace namespace) {
+			return names[namespace.ordinal()];
+		}
+
+		static Entry of(ClassMapping mapping) {
+			Entry out = named(new Entry(null), mapping);
+
+			for (MethodMapping method : mapping.getMethods()) {
+				Entry entry = named(new Entry(method.yarnDesc), method);
+
+				for (int slot = 0, slots = method.getParameterSlots(); slot < slots; slot++) {
+					String[] names = new String[NAMESPACES.length];
+					boolean any = false;
+
+					for (Namespace namespace : PARAMETER_NAMESPACES) {
+						any |= (names[namespace.ordinal()] = method.getParameter(namespace, slot)) != null;
+					}
+
+					if (any) entry.parameters.put(slot, names);
+				}
+
+				out.methods.add(entry);
+			}
+
+			for (DescriptedMapping field : mapping.getFields()) {
+				out.fields.add(named(new Entry(field.yarnDesc), field));
+			}
+
+			return out;
+		}
+
+		private static Entry named(Entry entry, Mapping mapping) {
+			for (Namespace namespace : NAMESPACES) {
+				entry.names[namespace.ordinal()] = namespace.get(mapping);
+			}
+			return entry;
+		}
+	}
+
+	//A class on one side, found by its key name (or its Yarn name if it doesn't have one)
+	private static class ClassRef {
+		final String name;
+
+		ClassRef(String name) {
+			this.name = name;
+		}
+	}
+
+	//One of the two things being compared, with the classes ordered by name so both sides can be walked through together
+	private abstract static class Side implements Closeable {
+		final Map<String, String> yarnToKey = new HashMap<>();
+		final List<ClassRef> classes = new ArrayList<>();
+		final List<ClassRef> keyless = new ArrayList<>();
+
+		void sort() {
+			classes.sort(Comparator.comparing(ref -> ref.name));
+			keyless.sort(Comparator.comparing(ref -> ref.name));
+		}
+
+		Remapper remapper() {
+			return new Remapper() {
+				@Override
+				public String map(String internalName) {
+					return yarnToKey.getOrDefault(internalName, internalName);
+				}
+			};
+		}
+
+		abstract Entry read(ClassRef ref) throws IOException;
+
+		@Override
+		public void close() throws IOException {
+		}
+	}
+
+	private static class TableClass extends ClassRef {
+		final ClassMapping mapping;
+
+		TableClass(String name, ClassMapping mapping) {
+			super(name);
+			this.mapping = mapping;
+		}
+	}
+
+	private static class TableSide extends Side {
+		TableSide(Collection<ClassMapping> table, Namespace key) {
+			for (ClassMapping mapping : table) {
+				String name = key.get(mapping);
+
+				if (name == null) {
+					keyless.add(new TableClass(mapping.yarn, mapping));
+				} else {
+					classes.add(new TableClass(name, mapping));
+					yarnToKey.put(mapping.yarn, name);
+				}
+			}
+
+			sort();
+		}
+
+		@Override
+		Entry read(ClassRef ref) {
+			return Entry.of(((TableClass) ref).mapping);
+		}
+	}
+
+	//Where a class's lines are in a merged file, so it can be read back in on its own
+	private static class ClassBlock extends ClassRef {
+		final long offset;
+		int length;
+
+		ClassBlock(String name, long offset) {
+			super(name);
+			this.offset = offset;
+		}
+	}
+
+	//Only the class names and where each class is are kept, the members are read a class at a time as they're compared
+	private static class ClassIndex extends Side {
+		private final Path file;
+		private final boolean temporary;
+		private final FileChannel channel;
+		private Namespace[] namespaces;
+		private boolean escapedNames;
+
+		ClassIndex(Path file, Namespace key) throws IOException {
+			if (file.getFileName().toString().endsWith(".gz")) {
+				//Inflated first so the classes can be read back in from wherever they are
+				Path inflated = Files.createTempFile(file.getFileName().toString(), ".tiny");
+				try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+					Files.copy(in, inflated, StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException | RuntimeException e) {
+					Files.deleteIfExists(inflated);
+					throw e;
+				}
+
+				this.file = inflated;
+				temporary = true;
+			} else {
+				this.file = file;
+				temporary = false;
+			}
+
+			try {
+				index(key);
+				sort();
+				channel = FileChannel.open(this.file);
+			} catch (IOException | RuntimeException e) {
+				if (temporary) Files.deleteIfExists(this.file);
+				throw e;
+			}
+		}
+
+		private void index(Namespace key) throws IOException {
+			try (InputStream in = Files.newInputStream(file)) {
+				ByteArrayOutputStream line = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				long offset = 0, lineStart = 0;
+				int keyIndex = -1, yarnIndex = -1;
+				boolean inHeader = true, indented = false;
+				ClassBlock current = null;
+
+				for (int read = 0, pos = 0;;) {
+					if (pos == read) {
+						read = in.read(buffer);
+						pos = 0;
+					}
+
+					boolean end = read < 0;
+					if (!end) {
+						byte b = buffer[pos++];
+
+						if (b != '\n') {
+							if (offset++ == lineStart) indented = b == '\t';
+							if (!indented || inHeader) line.write(b); //Members are only read when the class is
+							continue;
+						}
+						offset++;
+					} else if (offset == lineStart) {
+						break;
+					}
+
+					String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+					if (text.endsWith("\r")) text = text.substring(0, text.length() - 1);
+					line.reset();
+
+					if (lineStart == 0) {
+						if (!text.startsWith("tiny\t2\t")) throw new IOException("Invalid mapping version: \"" + text + '"');
+
+						String[] parts = MappingReader.splitAtTab(text, 0, 3 + NAMESPACES.length);
+						namespaces = new Namespace[parts.length - 3];
+						for (int i = 0; i < namespaces.length; i++) {
+							Namespace namespace = namespaces[i] = Namespace.byTinyName(parts[3 + i]);
+							if (namespace == key) keyIndex = i;
+							if (namespace == Namespace.YARN) yarnIndex = i;
+						}
+
+						if (yarnIndex < 0) throw new IOException("Invalid/unsupported tiny file (no named namespace)");
+						if (yarnIndex != 0) throw new IOException("Member descriptors need to be in named names to be compared");
+						if (keyIndex < 0) throw new IOException("No " + key.tinyName + " namespace to match entries by");
+					} else if (indented) {
+						if (inHeader && "\tescaped-names".equals(text)) escapedNames = true;
+					} else if (!text.isEmpty()) {
+						inHeader = false;
+
+						//Anything not indented ends the class before it
+						if (current != null) current.length = Math.toIntExact(lineStart - current.offset);
+						current = null;
+
+						if (text.startsWith("c\t")) {
+							String[] parts = MappingReader.splitAtTab(text, 0, 1 + namespaces.length);
+							if (parts.length != namespaces.length + 1) throw new IOException("Invalid class declaration at byte " + lineStart);
+
+							String yarn = MappingReader.unescapeOpt(parts[1 + yarnIndex], escapedNames);
+							String name = MappingReader.unescapeOpt(parts[1 + keyIndex], escapedNames);
+
+							if (name.isEmpty()) {
+								current = new ClassBlock(yarn, lineStart);
+								keyless.add(current);
+							} else {
+								current = new ClassBlock(name, lineStart);
+								classes.add(current);
+								yarnToKey.put(yarn, name);
+							}
+						}
+					}
+
+					lineStart = offset;
+					indented = false;
+					if (end) break;
+				}
+
+				if (current != null) current.length = Math.toIntExact(offset - current.offset);
+			}
+		}
+
+		@Override
+		Entry read(ClassRef ref) throws IOException {
+			ClassBlock block = (ClassBlock) ref;
+			ByteBuffer buffer = ByteBuffer.allocate(block.length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, block.offset + buffer.position()) < 0) throw new IOException("Class " + block.name + " in " + file + " ends early");
+			}
+
+			Entry out = null, method = null;
+			for (String line : new String(buffer.array(), StandardCharsets.UTF_8).split("\n")) {
+				if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+				if (line.isEmpty()) continue;
+
+				int indent = 0;
+				while (indent < line.length() && line.charAt(indent) == '\t') {
+					indent++;
+				}
+
+				String[] parts = MappingReader.splitAtTab(line, indent, 2 + namespaces.length);
+				String section = parts[0];
+
+				switch (indent) {
+				case 0: //Only the class's own declaration is ever in its block
+					if (out != null || !"c".equals(section)) throw new IOException("Unexpected line in " + block.name + ": " + line);
+					out = giveNames(new Entry(null), parts, 1);
+					break;
+
+				case 1:
+					method = null;
+
+					if ("m".equals(section) || "f".equals(section)) {
+						boolean isMethod = "m".equals(section);
+						if (parts.length != namespaces.length + 2) throw new IOException("Invalid " + (isMethod ? "metho" : "fiel") + "d declaration in " + block.name);
+
+						Entry member = giveNames(new Entry(MappingReader.unescapeOpt(parts[1], escapedNames)), parts, 2);
+						if (isMethod) {
+							out.methods.add(method = member);
+						} else {
+							out.fields.add(member);
+						}
+					}
+					break;
+
+				case 2: //Locals and comments aren't compared
+					if (method != null && "p".equals(section)) {
+						if (parts.length != namespaces.length + 2) throw new IOException("Invalid method parameter declaration in " + block.name);
+
+						String[] names = new String[NAMESPACES.length];
+						for (int i = 0; i < namespaces.length; i++) {
+							if (!parts[2 + i].isEmpty()) names[namespaces[i].ordinal()] = MappingReader.unescapeOpt(parts[2 + i], escapedNames);
+						}
+						method.parameters.put(Integer.parseInt(parts[1]), names);
+					}
+					break;
+				}
+			}
+
+			return out;
+		}
+
+		private Entry giveNames(Entry entry, String[] parts, int offset) {
+			for (int i = 0; i < namespaces.length; i++) {
+				String name = parts[offset + i];
+				if (!name.isEmpty()) entry.names[namespaces[i].ordinal()] = MappingReader.unescapeOpt(name, escapedNames);
+			}
+			return entry;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				channel.close();
+			} finally {
+				if (temporary) Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	//Entries are matched by their key namespace name (and descriptor), so pick one that's stable: intermediary for Yarn changes, SRG for MCP changes
+	//Anything without a key name is matched by its Yarn name (and descriptor) instead
+	public static void diff(Path from, Path to, Namespace key, Listener listener) {
+		try (ClassIndex fromIndex = new ClassIndex(from, key); ClassIndex toIndex = new ClassIndex(to, key)) {
+			diff(fromIndex, toIndex, key, listener);
+		} catch (IOException e) {
+			throw new RuntimeException("Error comparing " + from + " to " + to, e);
+		}
+	}
+
+	//For tables already in memory, such as one just merged
+	public static void diff(Collection<ClassMapping> from, Collection<ClassMapping> to, Namespace key, Listener listener) {
+		try {
+			diff(new TableSide(from, key), new TableSide(to, key), key, listener);
+		} catch (IOException e) {
+			throw new AssertionError("Tables aren't read from anywhere", e);
+		}
+	}
+
+	private static void diff(Side from, Side to, Namespace key, Listener listener) throws IOException {
+		Remapper fromRemapper = from.remapper();
+		Remapper toRemapper = to.remapper();
+
+		diffClasses(from, from.classes, to, to.classes, Function.identity(), key, fromRemapper, toRemapper, listener);
+		diffClasses(from, from.keyless, to, to.keyless, name -> keyless(key, name), key, fromRemapper, toRemapper, listener);
+	}
+
+	private static void diffClasses(Side fromSide, List<ClassRef> from, Side toSide, List<ClassRef> to, Function<String, String> label, Namespace key,
+			Remapper fromRemapper, Remapper toRemapper, Listener listener) throws IOException {
+		int i = 0, j = 0;
+		while (i < from.size() || j < to.size()) {
+			int order = i >= from.size() ? 1 : j >= to.size() ? -1 : from.get(i).name.compareTo(to.get(j).name);
+
+			if (order < 0) {
+				listener.removed(Kind.CLASS, null, label.apply(from.get(i++).name));
+			} else if (order > 0) {
+				listener.added(Kind.CLASS, null, label.apply(to.get(j++).name));
+			} else {
+				String owner = label.apply(from.get(i).name);
+				Entry fromClass = fromSide.read(from.get(i++));
+				Entry toClass = toSide.read(to.get(j++));
+
+				diffNames(Kind.CLASS, key, null, owner, fromClass, toClass, listener);
+				diffMembers(Kind.METHOD, key, owner, fromClass.methods, fromRemapper, toClass.methods, toRemapper, listener);
+				diffMembers(Kind.FIELD, key, owner, fromClass.fields, fromRemapper, toClass.fields, toRemapper, listener);
+			}
+		}
+	}
+
+	private static String keyless(Namespace key, String yarn) {
+		return yarn + " (no " + key.tinyName + " name)";
+	}
+
+	private static Entry[] sorted(Collection<Entry> entries, Function<Entry, String> key) {
+		Entry[] out = entries.stream().filter(entry -> key.apply(entry) != null).toArray(Entry[]::new);
+		Arrays.sort(out, Comparator.comparing(key));
+		return out;
+	}
+
+	private static void diffMembers(Kind kind, Namespace key, String owner, List<Entry> from, Remapper fromRemapper, List<Entry> to, Remapper toRemapper, Listener listener) {
+		diffMembers(kind, key, owner, from, memberKey(kind, key, fromRemapper), to, memberKey(kind, key, toRemapper), Function.identity(), listener);
+
+		//Nothing stable to map the descriptors of these to, so they have to match as they are
+		Function<Entry, String> yarnKey = entry -> entry.get(key) != null ? null : entry.get(Namespace.YARN) + (kind == Kind.METHOD ? entry.desc : ':' + entry.desc);
+		diffMembers(kind, key, owner, from, yarnKey, to, yarnKey, name -> keyless(key, name), listener);
+	}
+
+	private static void diffMembers(Kind kind, Namespace key, String owner, List<Entry> from, Function<Entry, String> fromKey,
+			List<Entry> to, Function<Entry, String> toKey, Function<String, String> label, Listener listener) {
+		Entry[] fromMembers = sorted(from, fromKey);
+		Entry[] toMembers = sorted(to, toKey);
+
+		int i = 0, j = 0;
+		while (i < fromMembers.length || j < toMembers.length) {
+			int order = i >= fromMembers.length ? 1 : j >= toMembers.length ? -1 : fromKey.apply(fromMembers[i]).compareTo(toKey.apply(toMembers[j]));
+
+			if (order < 0) {
+				listener.removed(kind, owner, label.apply(fromKey.apply(fromMembers[i++])));
+			} else if (order > 0) {
+				listener.added(kind, owner, label.apply(toKey.apply(toMembers[j++])));
+			} else {
+				Entry fromMember = fromMembers[i++];
+				Entry toMember = toMembers[j++];
+				String member = label.apply(fromKey.apply(fromMember));
+
+				diffNames(kind, key, owner, member, fromMember, toMember, listener);
+				if (kind == Kind.METHOD) diffParameters(owner + '/' + member, fromMember, toMember, listener);
+			}
+		}
+	}
+
+	private static Function<Entry, String> memberKey(Kind kind, Namespace key, Remapper remapper) {
+		return entry -> {
+			String name = entry.get(key);
+			if (name == null) return null;
+
+			return name + (kind == Kind.METHOD ? remapper.mapMethodDesc(entry.desc) : ':' + remapper.mapDesc(entry.desc));
+		};
+	}
+
+	private static void diffNames(Kind kind, Namespace key, String owner, String entry, Entry from, Entry to, Listener listener) {
+		for (Namespace namespace : NAMESPACES) {
+			if (namespace == key) continue;
+
+			String fromName = from.get(namespace);
+			String toName = to.get(namespace);
+			if (!Objects.equals(fromName, toName)) listener.renamed(kind, namespace, owner, entry, fromName, toName);
+		}
+	}
+
+	private static void diffParameters(String owner, Entry from, Entry to, Listener listener) {
+		TreeSet<Integer> slots = new TreeSet<>(from.parameters.keySet());
+		slots.addAll(to.parameters.keySet());
+
+		for (int index : slots) {
+			String[] fromNames = from.parameters.get(index);
+			String[] toNames = to.parameters.get(index);
+
+			String parameter = Integer.toString(index);
+			if (fromNames == null) {
+				listener.added(Kind.PARAMETER, owner, parameter);
+			} else if (toNames == null) {
+				listener.removed(Kind.PARAMETER, owner, parameter);
+			} else {
+				for (Namespace namespace : PARAMETER_NAMESPACES) {
+					String fromName = fromNames[namespace.ordinal()];
+					String toName = toNames[namespace.ordinal()];
+					if (!Objects.equals(fromName, toName)) listener.renamed(Kind.PARAMETER, namespace, owner, parameter, fromName, toName);
+				}
+			}
+		}
+	}
+}
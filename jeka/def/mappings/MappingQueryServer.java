@@ -0,0 +1,168 @@
+package mappings;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import mappings.MappingReader.ClassMapping;
+import mappings.MappingReader.DescriptedMapping;
+import mappings.MappingReader.Mapping;
+import mappings.MappingReader.MethodMapping;
+
+//Queries are a line of a namespace (or * for any) then one or more names, each name is answered with a line per match of:
+//name, kind (c/m/f/p), owner, descriptor (or parameter index), then the names in every namespace; all tab separated
+//Names without a match get a line of just the name and ?, each query line is finished by an empty line
+public class MappingQueryServer extends LineServer {
+	private static final Namespace[] NAMESPACES = Namespace.values();
+
+	private static class Parameter {
+		final ClassMapping owner;
+		final MethodMapping method;
+		final int index;
+
+		Parameter(ClassMapping owner, MethodMapping method, int index) {
+			this.owner = owner;
+			this.method = method;
+			this.index = index;
+		}
+	}
+
+	private final ClassTable table;
+	private final List<Map<String, List<DescriptedMapping>>> members = new ArrayList<>(NAMESPACES.length);
+	private final Map<DescriptedMapping, ClassMapping> owners = new HashMap<>();
+	private final List<Map<String, List<Parameter>>> parameters = new ArrayList<>(NAMESPACES.length);
+
+	public MappingQueryServer(Path mergedMappings) {
+		this(MappingReader.readMerged(mergedMappings));
+	}
+
+	public MappingQueryServer(ClassTable table) {
+		super("mapping queries");
+		this.table = table;
+
+		for (int i = 0; i < NAMESPACES.length; i++) {
+			members.add(new HashMap<>());
+			parameters.add(new HashMap<>());
+		}
+
+		for (ClassMapping owner : table) {
+			for (MethodMapping method : owner.getMethods()) {
+				index(owner, method);
+
+				for (int index = 0, slots = method.getParameterSlots(); index < slots; index++) {
+					for (Namespace namespace : NAMESPACES) {
+						String name = method.getParameter(namespace, index);
+						if (name != null) parameters.get(namespace.ordinal()).computeIfAbsent(name, k -> new ArrayList<>(1)).add(new Parameter(owner, method, index));
+					}
+				}
+			}
+
+			for (DescriptedMapping field : owner.getFields()) {
+				index(owner, field);
+			}
+		}
+	}
+
+	private void index(ClassMapping owner, DescriptedMapping member) {
+		owners.put(member, owner);
+
+		for (Namespace namespace : NAMESPACES) {
+			String name = namespace.get(member);
+			if (name != null) members.get(namespace.ordinal()).computeIfAbsent(name, k -> new ArrayList<>(1)).add(member);
+		}
+	}
+
+	@Override
+	public void answer(String query, Writer out) throws IOException {
+		String[] parts = query.trim().split("[ \t]+");
+		if (parts.length < 2) {
+			out.write("! Expected a namespace and at least one name\n\n");
+			return;
+		}
+
+		Namespace[] namespaces;
+		if ("*".equals(parts[0])) {
+			namespaces = NAMESPACES;
+		} else {
+			try {
+				namespaces = new Namespace[] {Namespace.byTinyName(parts[0])};
+			} catch (IllegalArgumentException e) {
+				out.write("! Unknown namespace: " + parts[0] + "\n\n");
+				return;
+			}
+		}
+
+		for (int i = 1; i < parts.length; i++) {
+			String name = parts[i].replace('.', '/');
+			Set<Object> matches = new LinkedHashSet<>(); //Names shared between namespaces would otherwise come up more than once
+
+			for (Namespace namespace : namespaces) {
+				ClassMapping mapping = table.get(namespace, name);
+				if (mapping != null) matches.add(mapping);
+
+				matches.addAll(members.get(namespace.ordinal()).getOrDefault(name, Collections.emptyList()));
+				matches.addAll(parameters.get(namespace.ordinal()).getOrDefault(name, Collections.emptyList()));
+			}
+
+			if (matches.isEmpty()) {
+				out.write(parts[i]);
+				out.write("\t?\n");
+				continue;
+			}
+
+			for (Object match : matches) {
+				if (match instanceof ClassMapping) {
+					write(out, parts[i], 'c', "", "", (ClassMapping) match);
+				} else if (match instanceof DescriptedMapping) {
+					DescriptedMapping member = (DescriptedMapping) match;
+					write(out, parts[i], member instanceof MethodMapping ? 'm' : 'f', owners.get(member).yarn, member.yarnDesc, member);
+				} else {
+					Parameter parameter = (Parameter) match;
+
+					out.write(parts[i]);
+					out.write("\tp\t");
+					out.write(parameter.owner.yarn);
+					out.write('/');
+					out.write(parameter.method.yarn);
+					out.write(parameter.method.yarnDesc);
+					out.write('\t');
+					out.write(Integer.toString(parameter.index));
+
+					for (Namespace namespace : NAMESPACES) {
+						String paramName = parameter.method.getParameter(namespace, parameter.index);
+						out.write('\t');
+						if (paramName != null) out.write(paramName);
+					}
+					out.write('\n');
+				}
+			}
+		}
+
+		out.write('\n');
+	}
+
+	private static void write(Writer out, String query, char kind, String owner, String extra, Mapping mapping) throws IOException {
+		out.write(query);
+		out.write('\t');
+		out.write(kind);
+		out.write('\t');
+		out.write(owner);
+		out.write('\t');
+		out.write(extra);
+
+		for (Namespace namespace : NAMESPACES) {
+			String name = namespace.get(mapping);
+			out.write('\t');
+			if (name != null) out.write(name);
+		}
+
+		out.write('\n');
+	}
+}
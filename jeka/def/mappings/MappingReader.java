@@ -11,11 +11,11 @@ import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.BiConsumer;
 import java.util.zip.GZIPInputStream;
 
 import net.fabricmc.tinyremapper.IMappingProvider.MappingAcceptor;
@@ -27,6 +27,8 @@ public class MappingReader {
 	static class Mapping {
 		final String yarn;
 		String notch, intermediary, srg, mcp;
+		boolean invalid; //Set by MappingValidator for entries which shouldn't be written
+		String comment;
 
 		Mapping(String yarn) {
 			this.yarn = yarn;
@@ -48,12 +50,24 @@ public class MappingReader {
 	}
 
 	static class MethodMapping extends DescriptedMapping {
-		private String[] yarnParams/*, srgParams, mcpParams*/;
+		private String[] yarnParams, srgParams, mcpParams, parameterComments;
+		//Locals are kept as parallel arrays, with three positions (LV index, start offset then LVT index) for each (Yarn) name
+		private int[] localPositions;
+		private String[] localNames, localComments;
 
 		MethodMapping(Entry<String, String> combo) {
 			super(combo);
 		}
 
+		void takeExtras(MethodMapping from) {
+			yarnParams = from.yarnParams;
+			parameterComments = from.parameterComments;
+			localPositions = from.localPositions;
+			localNames = from.localNames;
+			localComments = from.localComments;
+			if (from.comment != null) comment = from.comment;
+		}
+
 		void giveYarnParameters(String[] parameters) {
 			yarnParams = parameters;
 		}
@@ -67,39 +81,115 @@ public class MappingReader {
 			return yarnParams;
 		}
 
-		/*void addSRGParameter(int index, String name) {
-			String[] params;
-			if (srgParams == null) {
-				srgParams = params = new String[index + 1];
-			} else if (srgParams.length <= index) {
-				srgParams = params = Arrays.copyOf(srgParams, index + 1);
-			} else {
-				params = srgParams;
+		private static String[] addParameter(String[] params, int index, String name) {
+			if (params == null) {
+				params = new String[index + 1];
+			} else if (params.length <= index) {
+				params = Arrays.copyOf(params, index + 1);
 			}
 
 			params[index] = name;
+			return params;
 		}
 
-		String[] getSRGParameters() {
-			return srgParams;
+		void addParameter(Namespace namespace, int index, String name) {
+			switch (namespace) {
+			case YARN:
+				yarnParams = addParameter(yarnParams, index, name);
+				break;
+
+			case SRG:
+				srgParams = addParameter(srgParams, index, name);
+				break;
+
+			case MCP:
+				mcpParams = addParameter(mcpParams, index, name);
+				break;
+
+			default: //Intermediary and Notch names don't have parameters
+				break;
+			}
 		}
 
-		void addMCPParameter(int index, String name) {
+		String getParameter(Namespace namespace, int index) {
 			String[] params;
-			if (mcpParams == null) {
-				mcpParams = params = new String[index + 1];
-			} else if (mcpParams.length <= index) {
-				mcpParams = params = Arrays.copyOf(mcpParams, index + 1);
-			} else {
+			switch (namespace) {
+			case YARN:
+				params = yarnParams;
+				break;
+
+			case SRG:
+				params = srgParams;
+				break;
+
+			case MCP:
 				params = mcpParams;
+				break;
+
+			default:
+				return null;
 			}
 
-			params[index] = name;
+			assert index >= 0;
+			return params == null || index >= params.length ? null : params[index];
+		}
+
+		boolean hasExtras() {
+			return yarnParams != null || parameterComments != null || localNames != null || comment != null;
+		}
+
+		int getParameterSlots() {
+			int slots = Math.max(yarnParams == null ? 0 : yarnParams.length, Math.max(srgParams == null ? 0 : srgParams.length, mcpParams == null ? 0 : mcpParams.length));
+			return parameterComments == null ? slots : Math.max(slots, parameterComments.length);
+		}
+
+		void setParameterComment(int index, String comment) {
+			parameterComments = addParameter(parameterComments, index, comment);
+		}
+
+		String getParameterComment(int index) {
+			return parameterComments == null || index >= parameterComments.length ? null : parameterComments[index];
+		}
+
+		int addLocal(int lvIndex, int startOffset, int lvtIndex, String name) {
+			int local = getLocalCount();
+
+			localPositions = localPositions == null ? new int[3] : Arrays.copyOf(localPositions, localPositions.length + 3);
+			localPositions[3 * local] = lvIndex;
+			localPositions[3 * local + 1] = startOffset;
+			localPositions[3 * local + 2] = lvtIndex;
+			localNames = addParameter(localNames, local, name);
+
+			return local;
+		}
+
+		int getLocalCount() {
+			return localNames == null ? 0 : localNames.length;
 		}
 
-		String[] getMCPParameters() {
-			return mcpParams;
-		}*/
+		int getLocalIndex(int local) {
+			return localPositions[3 * local];
+		}
+
+		int getLocalStart(int local) {
+			return localPositions[3 * local + 1];
+		}
+
+		int getLocalTableIndex(int local) {
+			return localPositions[3 * local + 2];
+		}
+
+		String getLocalName(int local) {
+			return localNames[local];
+		}
+
+		void setLocalComment(int local, String comment) {
+			localComments = addParameter(localComments, local, comment);
+		}
+
+		String getLocalComment(int local) {
+			return localComments == null || local >= localComments.length ? null : localComments[local];
+		}
 	}
 
 	static class ClassMapping extends Mapping {
@@ -111,7 +201,11 @@ public class MappingReader {
 		}
 
 		MethodMapping addMethod(String name, String desc) {
-			return methods.computeIfAbsent(new SimpleImmutableEntry<>(name, desc), MethodMapping::new);
+			return methods.computeIfAbsent(new SimpleImmutableEntry<>(StringPool.intern(name), StringPool.intern(desc)), MethodMapping::new);
+		}
+
+		MethodMapping getMethod(String name, String desc) {
+			return methods.get(new SimpleImmutableEntry<>(name, desc));
 		}
 
 		Collection<MethodMapping> getMethods() {
@@ -119,7 +213,7 @@ public class MappingReader {
 		}
 
 		DescriptedMapping addField(String name, String desc) {
-			return fields.computeIfAbsent(new SimpleImmutableEntry<>(name, desc), DescriptedMapping::new);
+			return fields.computeIfAbsent(new SimpleImmutableEntry<>(StringPool.intern(name), StringPool.intern(desc)), DescriptedMapping::new);
 		}
 
 		Collection<DescriptedMapping> getFields() {
@@ -135,19 +229,19 @@ public class MappingReader {
 		}
 
 		private ClassMapping getMapping(String className) {
-			return mappings.computeIfAbsent(className, ClassMapping::new);
+			return mappings.computeIfAbsent(className, name -> new ClassMapping(StringPool.intern(name)));
 		}
 
 		@Override
 		public void acceptClass(String srcName, String dstName) {
-			acceptClass(getMapping(srcName), dstName);
+			acceptClass(getMapping(srcName), StringPool.intern(dstName));
 		}
 
 		protected abstract void acceptClass(ClassMapping mapping, String name);
 
 		@Override
 		public void acceptMethod(Member method, String dstName) {
-			acceptMethod(getMapping(method.owner).addMethod(method.name, method.desc), dstName);
+			acceptMethod(getMapping(method.owner).addMethod(method.name, method.desc), StringPool.intern(dstName));
 		}
 
 		protected abstract void acceptMethod(MethodMapping mapping, String name);
@@ -164,13 +258,13 @@ public class MappingReader {
 
 		@Override
 		public void acceptField(Member field, String dstName) {
-			acceptField(getMapping(field.owner).addField(field.name, field.desc), dstName);
+			acceptField(getMapping(field.owner).addField(field.name, field.desc), StringPool.intern(dstName));
 		}
 
 		protected abstract void acceptField(DescriptedMapping mapping, String name);
 	}
 
-	public static Collection<ClassMapping> buildTable(Path allYarn, Path yarnSrg, Path mcpYarn, AtomicBoolean escapedNames) {
+	public static ClassTable buildTable(Path allYarn, Path yarnSrg, Path mcpYarn, AtomicBoolean escapedNames) {
 		Map<String, ClassMapping> out = new HashMap<>();
 
 		TinyUtils.createTinyMappingProvider(allYarn, "named", "official").load(new MappingMapper(out) {
@@ -205,9 +299,7 @@ public class MappingReader {
 				mapping.intermediary = name;
 			}
 		});
-		escapedNames.set(readParameters(allYarn, "named", (method, locals) -> {
-			out.computeIfAbsent(method.owner, ClassMapping::new).addMethod(method.name, method.desc).giveYarnParameters(locals);
-		}));
+		escapedNames.set(readParameters(allYarn, "named", out));
 
 		try (BufferedReader reader = new BufferedReader(new InputStreamReader(mcpYarn.getFileName().toString().endsWith(".gz") ?
 				new GZIPInputStream(Files.newInputStream(mcpYarn)) : Files.newInputStream(mcpYarn), StandardCharsets.UTF_8)) {
@@ -265,19 +357,147 @@ public class MappingReader {
 			}
 		});
 
-		return out.values();
+		return new ClassTable(out.values());
+	}
+
+	public static ClassTable readMerged(Path file) {
+		try (BufferedReader reader = file.getFileName().toString().endsWith(".gz") ?
+				new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8)) : Files.newBufferedReader(file)) {
+			return readMerged(reader);
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading " + file, e);
+		}
+	}
+
+	private static ClassTable readMerged(BufferedReader reader) throws IOException {
+		String headerLine = reader.readLine();
+
+		if (headerLine == null) {
+			throw new EOFException();
+		} else if (!headerLine.startsWith("tiny\t2\t")) {
+			throw new IOException("Invalid mapping version: \"" + headerLine + '"');
+		}
+
+		String[] parts = splitAtTab(headerLine, 0, 3 + Namespace.values().length);
+		Namespace[] namespaces = new Namespace[parts.length - 3];
+		for (int i = 0; i < namespaces.length; i++) {
+			namespaces[i] = Namespace.byTinyName(parts[3 + i]);
+		}
+
+		int yarn = Arrays.asList(namespaces).indexOf(Namespace.YARN);
+		if (yarn < 0) throw new IOException("Invalid/unsupported tiny file (no named namespace)");
+
+		Map<String, ClassMapping> out = new LinkedHashMap<>();
+		boolean escapedNames = false;
+		boolean inHeader = true;
+
+		ClassMapping currentClass = null;
+		DescriptedMapping currentMember = null;
+		int parameter = -1, local = -1;
+
+		int lineNumber = 1;
+		for (String line = reader.readLine(); line != null; line = reader.readLine(), lineNumber++) {
+			if (line.isEmpty()) continue;
+
+			int indent = 0;
+			while (indent < line.length() && line.charAt(indent) == '\t') {
+				indent++;
+			}
+
+			parts = splitAtTab(line, indent, 2 + namespaces.length);
+			String section = parts[0];
+
+			switch (indent) {
+			case 0:
+				inHeader = false;
+				currentClass = null;
+				currentMember = null;
+
+				if ("c".equals(section)) {
+					if (parts.length != namespaces.length + 1) throw new IOException("Invalid class declaration on line " + lineNumber);
+
+					currentClass = out.computeIfAbsent(unescapeOpt(parts[1 + yarn], escapedNames), name -> new ClassMapping(StringPool.intern(name)));
+					giveNames(currentClass, namespaces, parts, 1, escapedNames);
+				}
+				break;
+
+			case 1:
+				currentMember = null;
+
+				if (inHeader) {
+					if ("escaped-names".equals(section)) {
+						escapedNames = true;
+					}
+				} else if (currentClass != null && ("m".equals(section) || "f".equals(section))) {
+					boolean isMethod = "m".equals(section);
+					if (parts.length != namespaces.length + 2) throw new IOException("Invalid " + (isMethod ? "metho" : "fiel") + "d declaration on line " + lineNumber);
+
+					String desc = unescapeOpt(parts[1], escapedNames);
+					String yarnName = unescapeOpt(parts[2 + yarn], escapedNames);
+
+					giveNames(currentMember = isMethod ? currentClass.addMethod(yarnName, desc) : currentClass.addField(yarnName, desc), namespaces, parts, 2, escapedNames);
+				} else if (currentClass != null && "c".equals(section)) {
+					currentClass.comment = unescape(parts[1]);
+				}
+				break;
+
+			case 2:
+				parameter = local = -1;
+				if (currentMember == null) break;
+
+				if (currentMember instanceof MethodMapping && "p".equals(section)) {
+					if (parts.length != namespaces.length + 2) throw new IOException("Invalid method parameter declaration on line " + lineNumber);
+					parameter = Integer.parseInt(parts[1]);
+
+					for (int i = 0; i < namespaces.length; i++) {
+						String name = parts[2 + i];
+						if (!name.isEmpty()) ((MethodMapping) currentMember).addParameter(namespaces[i], parameter, StringPool.intern(unescapeOpt(name, escapedNames)));
+					}
+				} else if (currentMember instanceof MethodMapping && "v".equals(section)) {
+					if (parts.length != namespaces.length + 4) throw new IOException("Invalid method variable declaration on line " + lineNumber);
+
+					String name = parts[4 + yarn]; //Only Yarn names are kept for locals
+					if (!name.isEmpty()) {
+						local = ((MethodMapping) currentMember).addLocal(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+								parts[3].isEmpty() ? -1 : Integer.parseInt(parts[3]), StringPool.intern(unescapeOpt(name, escapedNames)));
+					}
+				} else if ("c".equals(section)) {
+					currentMember.comment = unescape(parts[1]);
+				}
+				break;
+
+			case 3:
+				if (currentMember instanceof MethodMapping && "c".equals(section)) {
+					if (parameter >= 0) {
+						((MethodMapping) currentMember).setParameterComment(parameter, unescape(parts[1]));
+					} else if (local >= 0) {
+						((MethodMapping) currentMember).setLocalComment(local, unescape(parts[1]));
+					}
+				}
+				break;
+			}
+		}
+
+		return new ClassTable(out.values());
 	}
 
-	private static boolean readParameters(Path file, String paramNamespace, BiConsumer<Member, String[]> localMappingConsumer) {
+	private static void giveNames(Mapping mapping, Namespace[] namespaces, String[] parts, int offset, boolean escapedNames) {
+		for (int i = 0; i < namespaces.length; i++) {
+			String name = parts[offset + i];
+			if (!name.isEmpty()) namespaces[i].set(mapping, StringPool.intern(unescapeOpt(name, escapedNames)));
+		}
+	}
+
+	private static boolean readParameters(Path file, String paramNamespace, Map<String, ClassMapping> out) {
 		try (BufferedReader reader = file.getFileName().toString().endsWith(".gz") ?
 				new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8)) : Files.newBufferedReader(file)) {
-			return readParameters(reader, paramNamespace, localMappingConsumer);
+			return readParameters(reader, paramNamespace, out);
 		} catch (IOException e) {
 			throw new RuntimeException("Error reading " + file, e);
 		}
 	}
 
-	private static boolean readParameters(BufferedReader reader, String paramNamespace, BiConsumer<Member, String[]> localMappingConsumer) throws IOException {
+	private static boolean readParameters(BufferedReader reader, String paramNamespace, Map<String, ClassMapping> out) throws IOException {
 		String headerLine = reader.readLine();
 
 		if (headerLine == null) {
@@ -298,17 +518,21 @@ public class MappingReader {
 		assert ns >= 0;
 		Map<String, String> obfFrom = ns != 0 ? new HashMap<>() : null;
 
-		Map<Member, String[]> locals = new HashMap<>();
+		//Member descriptors are in the first namespace, so everything is held against them until all the classes are known
+		Map<Member, DescriptedMapping> members = new HashMap<>();
+		Map<String, String> classComments = new HashMap<>();
 
 		int partCountHint = 2 + namespaces.size(); // suitable for members, which should be the majority
 		boolean escapedNames = false;
 
 		boolean inHeader = true;
 		boolean inClass = false;
-		boolean inMethod = false;
 
 		String className = null;
-		Member member = null;
+		String memberName = null, memberDesc = null;
+		boolean isMethod = false;
+		DescriptedMapping member = null;
+		int parameter = -1, local = -1;
 
 		int lineNumber = 1;
 		for (String line = reader.readLine(); line != null; line = reader.readLine(), lineNumber++) {
@@ -323,12 +547,14 @@ public class MappingReader {
 			String section = parts[0];
 
 			if (indent == 0) {
-				inHeader = inClass = inMethod = false;
+				inHeader = inClass = false;
+				memberDesc = null;
+				member = null;
 
 				if ("c".equals(section)) { // class: c <names>...
 					if (parts.length != namespaces.size() + 1) throw new IOException("Invalid class declaration on line " + lineNumber);
 
-					className = unescapeOpt(parts[1 + ns], escapedNames);
+					className = StringPool.intern(unescapeOpt(parts[1 + ns], escapedNames));
 
 					if (obfFrom != null) {
 						obfFrom.put(unescapeOpt(parts[1], escapedNames), className);
@@ -337,51 +563,61 @@ public class MappingReader {
 					inClass = true;
 				}
 			} else if (indent == 1) {
-				inMethod = false;
+				memberDesc = null;
+				member = null;
 
 				if (inHeader) { // header k/v
 					if ("escaped-names".equals(section)) {
 						escapedNames = true;
 					}
 				} else if (inClass && ("m".equals(section) || "f".equals(section))) { // method/field: m/f <descA> <names>...
-					boolean isMethod = "m".equals(section);
+					isMethod = "m".equals(section);
 					if (parts.length != namespaces.size() + 2) throw new IOException("Invalid " + (isMethod ? "metho" : "fiel") + "d declaration on line " + lineNumber);
 
-					String memberDesc = unescapeOpt(parts[1], escapedNames);
-					String memberName = unescapeOpt(parts[2 + ns], escapedNames);
-					member = new Member(className, memberName, memberDesc);
-					inMethod = isMethod;
+					memberDesc = unescapeOpt(parts[1], escapedNames);
+					memberName = unescapeOpt(parts[2 + ns], escapedNames);
+				} else if (inClass && "c".equals(section)) { // class comment: c <comment>
+					classComments.put(className, unescape(parts[1]));
 				}
-			} else if (indent == 2) {
-				if (inMethod && "p".equals(section)) { // method parameter: p <lv-index> <names>...
+			} else if (indent == 2 && memberDesc != null) {
+				parameter = local = -1;
+
+				//Most members have nothing besides their names, so they're only held onto once there's a parameter, local or comment for them
+				if (member == null && ("c".equals(section) || isMethod && ("p".equals(section) || "v".equals(section)))) {
+					memberDesc = StringPool.intern(memberDesc);
+					memberName = StringPool.intern(memberName);
+					member = isMethod ? new MethodMapping(new SimpleImmutableEntry<>(memberName, memberDesc)) : new DescriptedMapping(memberName, memberDesc);
+					members.put(new Member(className, memberName, memberDesc), member);
+				}
+
+				if (member instanceof MethodMapping && "p".equals(section)) { // method parameter: p <lv-index> <names>...
 					if (parts.length != namespaces.size() + 2) throw new IOException("Invalid method parameter declaration on line " + lineNumber);
+					parameter = Integer.parseInt(parts[1]);
 
-					String mappedName = unescapeOpt(parts[2 + ns], escapedNames);
+					String mappedName = StringPool.intern(unescapeOpt(parts[2 + ns], escapedNames));
 					if (!mappedName.isEmpty()) {
-						int varLvIndex = Integer.parseInt(parts[1]);
-
-						String[] methodLocals = locals.get(member);
-						if (methodLocals == null || methodLocals.length <= varLvIndex) {
-							String[] longerLocals = new String[varLvIndex + 1];
-							if (methodLocals != null) System.arraycopy(methodLocals, 0, longerLocals, 0, methodLocals.length);
-							locals.put(member, methodLocals = longerLocals);
-						}
-
-						assert methodLocals[varLvIndex] == null;
-						methodLocals[varLvIndex] = mappedName;
+						assert ((MethodMapping) member).getYarnParameter(parameter) == null;
+						((MethodMapping) member).addParameter(Namespace.YARN, parameter, mappedName);
 					}
-				} else if (inMethod && "v".equals(section)) { // method variable: v <lv-index> <lv-start-offset> <optional-lvt-index> <names>...
+				} else if (member instanceof MethodMapping && "v".equals(section)) { // method variable: v <lv-index> <lv-start-offset> <optional-lvt-index> <names>...
 					if (parts.length != namespaces.size() + 4) throw new IOException("Invalid method variable declaration on line " + lineNumber);
 
-					String mappedName = unescapeOpt(parts[4 + ns], escapedNames);
+					String mappedName = StringPool.intern(unescapeOpt(parts[4 + ns], escapedNames));
 					if (!mappedName.isEmpty()) {
 						int varLvIndex = Integer.parseInt(parts[1]);
 						int varStartOpIdx = Integer.parseInt(parts[2]);
-						int varLvtIndex = Integer.parseInt(parts[3]);
+						int varLvtIndex = parts[3].isEmpty() ? -1 : Integer.parseInt(parts[3]);
 
-						//Don't currently support this as it stands, neither does Yarn so it could be worse
-						throw new UnsupportedOperationException(String.format("%1$s local %2$d: %5$s, start @ %3$d, index %4$d", member, varLvIndex, varStartOpIdx, varLvtIndex, mappedName));
+						local = ((MethodMapping) member).addLocal(varLvIndex, varStartOpIdx, varLvtIndex, mappedName);
 					}
+				} else if ("c".equals(section)) { // member comment: c <comment>
+					member.comment = unescape(parts[1]);
+				}
+			} else if (indent == 3 && member instanceof MethodMapping && "c".equals(section)) { // parameter/variable comment: c <comment>
+				if (parameter >= 0) {
+					((MethodMapping) member).setParameterComment(parameter, unescape(parts[1]));
+				} else if (local >= 0) {
+					((MethodMapping) member).setLocalComment(local, unescape(parts[1]));
 				}
 			}
 		}
@@ -393,13 +629,24 @@ public class MappingReader {
 			}
 		};
 
-		for (Entry<Member, String[]> entry : locals.entrySet()) {
-			Member mapping = entry.getKey();
+		for (Entry<Member, DescriptedMapping> entry : members.entrySet()) {
+			DescriptedMapping extras = entry.getValue();
+			if (extras instanceof MethodMapping ? !((MethodMapping) extras).hasExtras() : extras.comment == null) continue;
 
+			Member mapping = entry.getKey();
 			assert mapping.owner.equals(remapper.map(mapping.owner)); //Owner shouldn't be wrong
-			mapping.desc = remapper.mapDesc(mapping.desc);
+			String desc = remapper.mapDesc(mapping.desc);
+			ClassMapping owner = out.computeIfAbsent(mapping.owner, name -> new ClassMapping(StringPool.intern(name)));
+
+			if (extras instanceof MethodMapping) {
+				owner.addMethod(mapping.name, desc).takeExtras((MethodMapping) extras);
+			} else {
+				owner.addField(mapping.name, desc).comment = extras.comment;
+			}
+		}
 
-			localMappingConsumer.accept(mapping, entry.getValue());
+		for (Entry<String, String> entry : classComments.entrySet()) {
+			out.computeIfAbsent(entry.getKey(), name -> new ClassMapping(StringPool.intern(name))).comment = entry.getValue();
 		}
 
 		return escapedNames;
@@ -422,7 +669,7 @@ public class MappingReader {
 		return partCount == out.length ? out : Arrays.copyOf(out, partCount);
 	}
 
-	private static String unescapeOpt(String str, boolean escapedNames) {
+	static String unescapeOpt(String str, boolean escapedNames) {
 		return escapedNames ? unescape(str) : str;
 	}
 
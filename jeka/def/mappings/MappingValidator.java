@@ -0,0 +1,196 @@
+package mappings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.StringJoiner;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import mappings.MappingReader.ClassMapping;
+import mappings.MappingReader.DescriptedMapping;
+import mappings.MappingReader.Mapping;
+import mappings.MappingReader.MethodMapping;
+
+//Fills in the names (and parameters) MCP leaves implied and marks anything which can't be written as invalid, so MappingWriter doesn't have to check
+public class MappingValidator {
+	public enum Issue {
+		MISSING_NAME("missing names", true),
+		BRIDGE_METHOD("bridge method leftovers", true),
+		CONSTRUCTOR("mismatched constructors", false),
+		PARAMETER_COUNT("parameter count mismatches", false),
+		UNMATCHED_PARAMETER("Yarn parameters without an SRG one", false),
+		UNKNOWN_ACCESS("methods missing from the Forge jar (parameters skipped)", false);
+
+		public final String description;
+		public final boolean dropped; //Whether entries with the issue are left out of the written mappings
+
+		private Issue(String description, boolean dropped) {
+			this.description = description;
+			this.dropped = dropped;
+		}
+	}
+
+	public static class Report {
+		private final Map<Issue, List<String>> issues = new EnumMap<>(Issue.class);
+
+		void add(Issue issue, String entry) {
+			issues.computeIfAbsent(issue, k -> new ArrayList<>()).add(entry);
+		}
+
+		void merge(Report other) {
+			for (Entry<Issue, List<String>> entry : other.issues.entrySet()) {
+				issues.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).addAll(entry.getValue());
+			}
+		}
+
+		public boolean isClean() {
+			return issues.isEmpty();
+		}
+
+		public int count(Issue issue) {
+			List<String> entries = issues.get(issue);
+			return entries != null ? entries.size() : 0;
+		}
+
+		public void forEach(BiConsumer<Issue, String> action) {
+			for (Entry<Issue, List<String>> entry : issues.entrySet()) {
+				for (String issue : entry.getValue()) {
+					action.accept(entry.getKey(), issue);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			if (isClean()) return "no issues";
+
+			StringJoiner out = new StringJoiner(", ");
+			for (Entry<Issue, List<String>> entry : issues.entrySet()) {
+				Issue issue = entry.getKey();
+				out.add(entry.getValue().size() + " " + issue.description + (issue.dropped ? " (skipped)" : ""));
+			}
+			return out.toString();
+		}
+	}
+
+	//The factories give null for methods they can't give parameters for
+	public static Report validate(Collection<ClassMapping> table, BiFunction<ClassMapping, MethodMapping, String[]> srgParameterFactory, BiFunction<ClassMapping, MethodMapping, String[]> mcpParameterFactory) {
+		//Each class (and its members) is only touched by the thread validating it, so they can be filled in safely in parallel
+		return table.parallelStream().collect(Report::new, (report, classMapping) -> validate(report, classMapping, srgParameterFactory, mcpParameterFactory), Report::merge);
+	}
+
+	private static void validate(Report report, ClassMapping classMapping, BiFunction<ClassMapping, MethodMapping, String[]> srgParameterFactory, BiFunction<ClassMapping, MethodMapping, String[]> mcpParameterFactory) {
+		if (classMapping.mcp == null) classMapping.mcp = classMapping.srg;
+
+		if (!allPresent(classMapping)) {
+			classMapping.invalid = true;
+			report.add(Issue.MISSING_NAME, asString(classMapping));
+			return; //Nothing in the class will be written without it
+		}
+
+		for (MethodMapping methodMapping : classMapping.getMethods()) {
+			if ("<init>".equals(methodMapping.yarn)) {
+				if (!methodMapping.yarn.equals(methodMapping.intermediary) || !methodMapping.yarn.equals(methodMapping.notch) || !classMapping.srg.equals(classMapping.mcp)) {
+					report.add(Issue.CONSTRUCTOR, classMapping.yarn + '/' + asString(methodMapping));
+				}
+
+				methodMapping.srg = methodMapping.mcp = methodMapping.yarn; //Constructors' parameters are found by their class rather than a name
+			} else {
+				if (methodMapping.intermediary != null && methodMapping.intermediary.equals(methodMapping.notch) && !methodMapping.yarn.equals(methodMapping.intermediary)) {
+					methodMapping.invalid = true; //This appears to come from bridge methods
+					report.add(Issue.BRIDGE_METHOD, classMapping.intermediary + '/' + asString(methodMapping));
+					continue;
+				}
+
+				if (methodMapping.mcp == null) methodMapping.mcp = methodMapping.srg;
+			}
+
+			if (!allPresent(methodMapping)) {
+				methodMapping.invalid = true;
+				report.add(Issue.MISSING_NAME, classMapping.yarn + '/' + asString(methodMapping));
+				continue;
+			}
+
+			//The descriptor mappings don't especially matter, it's just for spreading the parameter indexes
+			String[] srgArgs = srgParameterFactory.apply(classMapping, methodMapping);
+			if (srgArgs == null) {
+				report.add(Issue.UNKNOWN_ACCESS, classMapping.yarn + '/' + methodMapping.yarn + methodMapping.yarnDesc);
+			} else if (srgArgs.length > 0) {
+				String[] mcpArgs = mcpParameterFactory.apply(classMapping, methodMapping);
+
+				if (srgArgs.length != mcpArgs.length) {
+					//Normally MCP's params.csv having names for more parameters than the method has, the SRG names are kept for writing
+					report.add(Issue.PARAMETER_COUNT, classMapping.yarn + '/' + methodMapping.yarn + methodMapping.yarnDesc + " has " + srgArgs.length + " SRG and " + mcpArgs.length + " MCP");
+				}
+
+				for (int arg = 0; arg < srgArgs.length; arg++) {
+					String srgArg = srgArgs[arg];
+					out: if (srgArg == null) {
+						if (classMapping.yarn.startsWith("com/mojang/realmsclient/") || classMapping.yarn.startsWith("com/mojang/blaze3d/")) {
+							String yarnArg = methodMapping.getYarnParameter(arg);
+							assert yarnArg == null || arg == 0:
+								classMapping.yarn + '/' + methodMapping.yarn + " arg " + arg + ", had " + Arrays.toString(srgArgs);
+
+							if (yarnArg != null) {
+								assert srgArgs.length > arg + 1;
+								mcpArgs[arg] = srgArg = srgArgs[arg + 1].substring(0, srgArgs[arg + 1].length() - 2) + arg + '_';
+
+								assert methodMapping.getYarnParameter(srgArgs.length - 1) == null;
+								srgArgs = Arrays.copyOf(srgArgs, srgArgs.length - 1);
+								break out;
+							}
+						}
+						continue;
+					}
+
+					//MappingWriter only writes the parameters which have SRG names, so it never needs the factories itself
+					methodMapping.addParameter(Namespace.SRG, arg, srgArg);
+					methodMapping.addParameter(Namespace.MCP, arg, arg < mcpArgs.length ? mcpArgs[arg] : srgArg);
+				}
+			}
+		}
+
+		for (DescriptedMapping fieldMapping : classMapping.getFields()) {
+			if (fieldMapping.mcp == null) fieldMapping.mcp = fieldMapping.srg;
+
+			if (!allPresent(fieldMapping)) {
+				fieldMapping.invalid = true;
+				report.add(Issue.MISSING_NAME, classMapping.yarn + '/' + asString(fieldMapping));
+			}
+		}
+	}
+
+	//Done separately as ParameterPropagator can give Yarn parameters to methods after they've been validated
+	public static void checkParameters(Collection<ClassMapping> table, Report report) {
+		report.merge(table.parallelStream().collect(Report::new, MappingValidator::checkParameters, Report::merge));
+	}
+
+	private static void checkParameters(Report report, ClassMapping classMapping) {
+		if (classMapping.invalid) return;
+
+		for (MethodMapping methodMapping : classMapping.getMethods()) {
+			if (methodMapping.invalid) continue;
+
+			for (int arg = 0, slots = methodMapping.getParameterSlots(); arg < slots; arg++) {
+				String yarnArg = methodMapping.getYarnParameter(arg);
+
+				if (yarnArg != null && methodMapping.getParameter(Namespace.SRG, arg) == null) {
+					report.add(Issue.UNMATCHED_PARAMETER, classMapping.yarn + '/' + methodMapping.yarn + methodMapping.yarnDesc + " arg " + arg + " (" + yarnArg + ')');
+				}
+			}
+		}
+	}
+
+	private static boolean allPresent(Mapping mapping) {
+		return mapping.yarn != null && mapping.intermediary != null && mapping.notch != null && mapping.srg != null && mapping.mcp != null;
+	}
+
+	private static String asString(Mapping mapping) {
+		return new StringJoiner(", ").add(mapping.yarn).add(mapping.intermediary).add(mapping.notch).add(mapping.srg).add(mapping.mcp).toString();
+	}
+}
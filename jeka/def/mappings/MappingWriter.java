@@ -4,19 +4,16 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.StringJoiner;
-import java.util.function.BiFunction;
 
 import mappings.MappingReader.ClassMapping;
 import mappings.MappingReader.DescriptedMapping;
 import mappings.MappingReader.Mapping;
 import mappings.MappingReader.MethodMapping;
 
+//Expects the table to have been through MappingValidator first to fill in (or mark as invalid) anything missing, parameters included
 public class MappingWriter {
-	public static void writeTable(Path to, Collection<ClassMapping> table, boolean escapedNames,
-			BiFunction<String, String, String[]> srgParameterFactory, BiFunction<String, String, String[]> mcpParameterFactory) {
+	public static void writeTable(Path to, Collection<ClassMapping> table, boolean escapedNames) {
 		try (BufferedWriter writer = Files.newBufferedWriter(to)) {
 			writer.write("tiny\t2\t0\tnamed\tintermediary\tofficial\tsrg\tmcp");
 			writer.newLine();
@@ -27,95 +24,62 @@ public class MappingWriter {
 			}
 
 			for (ClassMapping classMapping : table) {
-				if (classMapping.mcp == null) {
-					assert classMapping.yarn.equals(classMapping.srg);
-					classMapping.mcp = classMapping.srg;
-				}
-
-				assert allPresent(classMapping): asString(classMapping);
+				if (classMapping.invalid) continue;
 
 				writer.write("c\t");
 				writeAll(writer, escapedNames, classMapping);
+				writeComment(writer, "\tc\t", classMapping.comment);
 
 				for (MethodMapping methodMapping : classMapping.getMethods()) {
-					boolean isConstructor;
-					if (isConstructor = "<init>".equals(methodMapping.yarn)) {
-						assert methodMapping.yarn.equals(methodMapping.intermediary) && methodMapping.yarn.equals(methodMapping.notch);
-						methodMapping.srg = methodMapping.mcp = methodMapping.yarn;
-					} else if (methodMapping.intermediary.equals(methodMapping.notch) && !methodMapping.yarn.equals(methodMapping.intermediary)) {
-						System.out.println(new StringJoiner(", ", "Invalid Yarn entry: ", "").add(classMapping.intermediary + '/' + methodMapping.notch)
-								.add(methodMapping.intermediary).add(methodMapping.yarn)); //This appears to come from bridge methods
-						continue;
-					} else if (methodMapping.mcp == null) {
-						methodMapping.mcp = methodMapping.srg;
-					}
-
-					assert allPresent(methodMapping): asString(methodMapping);
+					if (methodMapping.invalid) continue;
 
 					writer.write("\tm\t");
 					writer.write(methodMapping.yarnDesc);
 					writer.write('\t');
 					writeAll(writer, escapedNames, methodMapping);
-
-					if (isConstructor) {
-						assert "<init>".equals(methodMapping.mcp) && "<init>".equals(methodMapping.srg);
-						assert classMapping.srg.equals(classMapping.mcp);
-						methodMapping.srg = methodMapping.mcp += classMapping.srg;
+					writeComment(writer, "\t\tc\t", methodMapping.comment);
+
+					for (int arg = 0, slots = methodMapping.getParameterSlots(); arg < slots; arg++) {
+						String srgArg = methodMapping.getParameter(Namespace.SRG, arg);
+						if (srgArg == null) continue; //Anything Yarn has here is reported by MappingValidator
+
+						String yarnArg = methodMapping.getYarnParameter(arg);
+
+						writer.write("\t\tp\t");
+						writer.write(Integer.toString(arg));
+						writer.write('\t');
+						if (yarnArg != null) escapedWrite(writer, escapedNames, yarnArg);
+						writer.write("\t\t\t");
+						escapedWrite(writer, escapedNames, srgArg);
+						writer.write('\t');
+						escapedWrite(writer, escapedNames, methodMapping.getParameter(Namespace.MCP, arg));
+						writer.newLine();
+						writeComment(writer, "\t\t\tc\t", methodMapping.getParameterComment(arg));
 					}
 
-					//The descriptor mappings don't especially matter, it's just for spreading the parameter indexes
-					String[] srgArgs = srgParameterFactory.apply(methodMapping.srg, methodMapping.yarnDesc);
-					if (srgArgs.length > 0) {
-						String[] mcpArgs = mcpParameterFactory.apply(methodMapping.srg, methodMapping.yarnDesc);
-						assert srgArgs.length == mcpArgs.length || allowInvalidMCPParam(mcpArgs):
-							"Unequal arg lengths for " + classMapping.yarn + '/' + methodMapping.yarn + ": " + Arrays.toString(srgArgs) + " and " + Arrays.toString(mcpArgs);
-
-						for (int arg = 0; arg < srgArgs.length; arg++) {
-							String srgArg = srgArgs[arg];
-							out: if (srgArg == null) {
-								if (classMapping.yarn.startsWith("com/mojang/realmsclient/") || classMapping.yarn.startsWith("com/mojang/blaze3d/")) {
-									String yarnArg = methodMapping.getYarnParameter(arg);
-									assert yarnArg == null || arg == 0:
-										classMapping.yarn + '/' + methodMapping.yarn + " arg " + arg + " (" + isConstructor + "), had " + Arrays.toString(srgArgs);
-
-									if (yarnArg != null) {
-										assert srgArgs.length > arg + 1;
-										mcpArgs[arg] = srgArg = srgArgs[arg + 1].substring(0, srgArgs[arg + 1].length() - 2) + arg + '_';
-
-										assert methodMapping.getYarnParameter(srgArgs.length - 1) == null;
-										srgArgs = Arrays.copyOf(srgArgs, srgArgs.length - 1);
-										break out;
-									}
-								} else {
-									assert methodMapping.getYarnParameter(arg) == null:
-										"No SRG arg for " + classMapping.yarn + '/' + methodMapping.yarn + " but Yarn arg was " + methodMapping.getYarnParameter(arg);
-								}
-								continue;
-							}
-
-							String yarnArg = methodMapping.getYarnParameter(arg);
-
-							writer.write("\t\tp\t");
-							writer.write(Integer.toString(arg));
-							writer.write('\t');
-							if (yarnArg != null) escapedWrite(writer, escapedNames, yarnArg);
-							writer.write("\t\t\t");
-							escapedWrite(writer, escapedNames, srgArg);
-							writer.write('\t');
-							escapedWrite(writer, escapedNames, mcpArgs[arg]);
-							writer.newLine();
-						}
+					for (int local = 0, locals = methodMapping.getLocalCount(); local < locals; local++) {
+						writer.write("\t\tv\t");
+						writer.write(Integer.toString(methodMapping.getLocalIndex(local)));
+						writer.write('\t');
+						writer.write(Integer.toString(methodMapping.getLocalStart(local)));
+						writer.write('\t');
+						writer.write(Integer.toString(methodMapping.getLocalTableIndex(local)));
+						writer.write('\t');
+						escapedWrite(writer, escapedNames, methodMapping.getLocalName(local));
+						writer.write("\t\t\t\t"); //Only Yarn has names for locals
+						writer.newLine();
+						writeComment(writer, "\t\t\tc\t", methodMapping.getLocalComment(local));
 					}
 				}
 
 				for (DescriptedMapping fieldMapping : classMapping.getFields()) {
-					if (fieldMapping.mcp == null) fieldMapping.mcp = fieldMapping.srg;
-					assert allPresent(fieldMapping): asString(fieldMapping);
+					if (fieldMapping.invalid) continue;
 
 					writer.write("\tf\t");
 					writer.write(fieldMapping.yarnDesc);
 					writer.write('\t');
 					writeAll(writer, escapedNames, fieldMapping);
+					writeComment(writer, "\t\tc\t", fieldMapping.comment);
 				}
 			}
 		} catch (IOException e) {
@@ -123,36 +87,6 @@ public class MappingWriter {
 		}
 	}
 
-	private static boolean allPresent(Mapping mapping) {
-		return mapping.yarn != null && mapping.intermediary != null && mapping.notch != null && mapping.srg != null && mapping.mcp != null;
-	}
-
-	private static String asString(Mapping mapping) {
-		return new StringJoiner(", ").add(mapping.yarn).add(mapping.intermediary).add(mapping.notch).add(mapping.srg).add(mapping.mcp).toString();
-	}
-
-	private static boolean allowInvalidMCPParam(String[] mcpArgs) {
-		switch (mcpArgs.length) {
-		case 2:
-			return "p_71377_0_".equals(mcpArgs[0]) && "crashReportIn".equals(mcpArgs[1]) || "p_178304_0_".equals(mcpArgs[0]) && "hash".equals(mcpArgs[1])
-					|| "p_181679_0_".equals(mcpArgs[0]) && "bufferBuilderIn".equals(mcpArgs[1]) || "p_148075_0_".equals(mcpArgs[0]) && "manager".equals(mcpArgs[1])
-					|| "p_148077_0_".equals(mcpArgs[0]) && "manager".equals(mcpArgs[1]);
-
-		case 3:
-			return "p_180438_0_".equals(mcpArgs[0]) && "entitylivingbaseIn".equals(mcpArgs[1]) && "partialTicks".equals(mcpArgs[2]);
-
-		case 5:
-			return "p_189553_0_".equals(mcpArgs[0]) && "blockaccessIn".equals(mcpArgs[1]) && "x".equals(mcpArgs[2]) && "y".equals(mcpArgs[3]) && "z".equals(mcpArgs[4]);
-
-		case 6:
-			return "p_193578_0_".equals(mcpArgs[0]) && "blockaccessIn".equals(mcpArgs[1]) && "x".equals(mcpArgs[2]) &&
-					"y".equals(mcpArgs[3]) && "z".equals(mcpArgs[4]) && "nodeType".equals(mcpArgs[5]);
-
-		default:
-			return false;
-		}
-	}
-
 	private static void writeAll(BufferedWriter writer, boolean escape, Mapping mapping) throws IOException {
 		escapedWrite(writer, escape, mapping.yarn);
 		writer.write('\t');
@@ -166,6 +100,14 @@ public class MappingWriter {
 		writer.newLine();
 	}
 
+	private static void writeComment(BufferedWriter writer, String prefix, String comment) throws IOException {
+		if (comment == null) return;
+
+		writer.write(prefix);
+		escapedWrite(writer, comment); //Comments are always escaped, regardless of escaped-names
+		writer.newLine();
+	}
+
 	private static void escapedWrite(BufferedWriter writer, boolean escape, String text) throws IOException {
 		if (escape) {
 			escapedWrite(writer, text);
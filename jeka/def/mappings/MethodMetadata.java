@@ -0,0 +1,139 @@
+package mappings;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import dev.jeka.core.api.system.JkLog;
+import dev.jeka.core.api.utils.JkUtilsPath;
+
+import net.fabricmc.tinyremapper.asm.ClassReader;
+import net.fabricmc.tinyremapper.asm.ClassVisitor;
+import net.fabricmc.tinyremapper.asm.MethodVisitor;
+import net.fabricmc.tinyremapper.asm.Opcodes;
+
+//The access flags of every method in a jar, read straight from the bytecode rather than guessed from names
+public class MethodMetadata {
+	private final Map<String, Integer> access; //Owner, name and descriptor to the method's access flags
+
+	private MethodMetadata(Map<String, Integer> access) {
+		this.access = access;
+	}
+
+	public static Path defaultCache() {
+		return UserCache.resolve("methods");
+	}
+
+	//Scanning the whole jar is only needed when it's changed, otherwise the last scan is reused
+	public static MethodMetadata read(Path jar, Path cache) {
+		Path cached = cache.resolve(Hashing.SHA1(jar) + ".txt");
+
+		if (Files.isRegularFile(cached)) {
+			try {
+				return readCache(cached);
+			} catch (UncheckedIOException | IllegalArgumentException e) {
+				JkLog.warn("Unable to read cached method metadata for " + jar + ", rescanning: " + e);
+			}
+		}
+
+		MethodMetadata metadata = scan(jar);
+		metadata.writeCache(cached);
+		return metadata;
+	}
+
+	public static MethodMetadata scan(Path jar) {
+		Map<String, Integer> access = new ConcurrentHashMap<>();
+
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			zip.stream().parallel().filter(entry -> entry.getName().endsWith(".class")).forEach(entry -> readClass(zip, entry, access));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading methods from " + jar, e);
+		}
+
+		return new MethodMetadata(access);
+	}
+
+	private static void readClass(ZipFile jar, ZipEntry entry, Map<String, Integer> out) {
+		try (InputStream in = jar.getInputStream(entry)) {
+			new ClassReader(in).accept(new ClassVisitor(Opcodes.ASM7) {
+				private String owner;
+
+				@Override
+				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+					owner = name;
+				}
+
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					out.put(key(owner, name, descriptor), access);
+					return null;
+				}
+			}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading " + entry.getName() + " from " + jar.getName(), e);
+		}
+	}
+
+	private static MethodMetadata readCache(Path cached) {
+		Map<String, Integer> access = new ConcurrentHashMap<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(cached)) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				int split = line.indexOf('\t');
+				if (split < 1) throw new IllegalArgumentException("Malformed line: " + line);
+
+				access.put(line.substring(split + 1), Integer.parseInt(line.substring(0, split), 16));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading " + cached, e);
+		}
+
+		return new MethodMetadata(access);
+	}
+
+	private void writeCache(Path cached) {
+		Path temp = null;
+
+		try {
+			JkUtilsPath.createDirectories(cached.getParent());
+			temp = Files.createTempFile(cached.getParent(), cached.getFileName().toString(), ".tmp");
+
+			try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+				for (Map.Entry<String, Integer> entry : access.entrySet()) {
+					writer.write(Integer.toHexString(entry.getValue()));
+					writer.write('\t');
+					writer.write(entry.getKey());
+					writer.newLine();
+				}
+			}
+
+			//Each scan is written on its own and moved in whole, so nothing reading the cache sees part of one
+			Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | UncheckedIOException e) {
+			JkLog.warn("Unable to cache method metadata to " + cached + ": " + e);
+			if (temp != null) JkUtilsPath.deleteIfExists(temp);
+		}
+	}
+
+	private static String key(String owner, String name, String desc) {
+		return owner + '.' + name + desc;
+	}
+
+	//Null if the method isn't in the jar
+	public Integer getAccess(String owner, String name, String desc) {
+		return access.get(key(owner, name, desc));
+	}
+
+	public int size() {
+		return access.size();
+	}
+}
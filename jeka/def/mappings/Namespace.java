@@ -0,0 +1,79 @@
+package mappings;
+
+import mappings.MappingReader.Mapping;
+
+public enum Namespace {
+	YARN("named") {
+		@Override
+		String get(Mapping mapping) {
+			return mapping.yarn;
+		}
+
+		@Override
+		void set(Mapping mapping, String name) {
+			assert mapping.yarn.equals(name): "Tried to change Yarn name of " + mapping.yarn + " to " + name;
+		}
+	},
+	INTERMEDIARY("intermediary") {
+		@Override
+		String get(Mapping mapping) {
+			return mapping.intermediary;
+		}
+
+		@Override
+		void set(Mapping mapping, String name) {
+			mapping.intermediary = name;
+		}
+	},
+	NOTCH("official") {
+		@Override
+		String get(Mapping mapping) {
+			return mapping.notch;
+		}
+
+		@Override
+		void set(Mapping mapping, String name) {
+			mapping.notch = name;
+		}
+	},
+	SRG("srg") {
+		@Override
+		String get(Mapping mapping) {
+			return mapping.srg;
+		}
+
+		@Override
+		void set(Mapping mapping, String name) {
+			mapping.srg = name;
+		}
+	},
+	MCP("mcp") {
+		@Override
+		String get(Mapping mapping) {
+			return mapping.mcp;
+		}
+
+		@Override
+		void set(Mapping mapping, String name) {
+			mapping.mcp = name;
+		}
+	};
+
+	public final String tinyName;
+
+	private Namespace(String tinyName) {
+		this.tinyName = tinyName;
+	}
+
+	abstract String get(Mapping mapping);
+
+	abstract void set(Mapping mapping, String name);
+
+	public static Namespace byTinyName(String name) {
+		for (Namespace namespace : values()) {
+			if (namespace.tinyName.equals(name)) return namespace;
+		}
+
+		throw new IllegalArgumentException("Unknown namespace: " + name);
+	}
+}
@@ -0,0 +1,181 @@
+package mappings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import net.fabricmc.tinyremapper.asm.ClassReader;
+import net.fabricmc.tinyremapper.asm.ClassVisitor;
+import net.fabricmc.tinyremapper.asm.MethodVisitor;
+import net.fabricmc.tinyremapper.asm.Opcodes;
+import net.fabricmc.tinyremapper.asm.Type;
+import net.fabricmc.tinyremapper.asm.commons.Remapper;
+
+import mappings.MappingReader.ClassMapping;
+import mappings.MappingReader.MethodMapping;
+
+//Copies Yarn parameter names from methods down to the methods which override them but have no names of their own
+public class ParameterPropagator {
+	private static class Node {
+		final String name; //In MCP names, as is everything read from the jar
+		final ClassMapping mapping;
+		final String[] parentNames;
+		final Map<String, Integer> access = new HashMap<>(); //MCP name and descriptor of each method to its access flags
+		final List<Node> parents = new ArrayList<>();
+
+		Node(String name, ClassMapping mapping, String[] parentNames) {
+			this.name = name;
+			this.mapping = mapping;
+			this.parentNames = parentNames;
+		}
+	}
+
+	public static int propagate(ClassTable table, Path mcpJar) {
+		Map<ClassMapping, Node> nodes = readHierarchy(table, mcpJar);
+		Map<MethodMapping, String[]> found = new ConcurrentHashMap<>();
+		Remapper yarnToMCP = table.remapper(Namespace.YARN, Namespace.MCP);
+
+		//Each method looks through its own parents, so there's no order the classes need to be done in
+		nodes.values().parallelStream().filter(node -> !node.parents.isEmpty()).forEach(node -> {
+			for (MethodMapping method : node.mapping.getMethods()) {
+				if (method.invalid || "<init>".equals(method.yarn)) continue;
+
+				Integer access = node.access.get(method.mcp + yarnToMCP.mapMethodDesc(method.yarnDesc));
+				if (access == null || (access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC)) != 0) continue; //Can't override anything
+
+				String[] params = inherit(node, method, yarnToMCP);
+				if (params != null) found.put(method, params);
+			}
+		});
+
+		//Only the original names are read whilst looking, so they're not swapped in until everything is done
+		found.forEach(MethodMapping::giveYarnParameters);
+		return found.size();
+	}
+
+	private static Map<ClassMapping, Node> readHierarchy(ClassTable table, Path mcpJar) {
+		Map<ClassMapping, Node> nodes = new ConcurrentHashMap<>();
+
+		try (ZipFile jar = new ZipFile(mcpJar.toFile())) {
+			jar.stream().parallel().filter(entry -> entry.getName().endsWith(".class")).forEach(entry -> {
+				Node node = readClass(table, jar, entry);
+				if (node != null) nodes.put(node.mapping, node);
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading class hierarchy from " + mcpJar, e);
+		}
+
+		for (Node node : nodes.values()) {
+			for (String parentName : node.parentNames) {
+				ClassMapping parentMapping = table.get(Namespace.MCP, parentName);
+				Node parent = parentMapping != null ? nodes.get(parentMapping) : null;
+
+				if (parent != null) node.parents.add(parent);
+			}
+		}
+
+		return nodes;
+	}
+
+	private static Node readClass(ClassTable table, ZipFile jar, ZipEntry entry) {
+		Node[] out = new Node[1];
+
+		try (InputStream in = jar.getInputStream(entry)) {
+			new ClassReader(in).accept(new ClassVisitor(Opcodes.ASM7) {
+				@Override
+				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+					ClassMapping mapping = table.get(Namespace.MCP, name);
+					if (mapping == null) return; //Not a class there are mappings for
+
+					String[] parentNames;
+					if (superName == null) {
+						parentNames = interfaces;
+					} else {
+						parentNames = Arrays.copyOf(interfaces, interfaces.length + 1);
+						parentNames[interfaces.length] = superName;
+					}
+
+					out[0] = new Node(name, mapping, parentNames);
+				}
+
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					if (out[0] != null) out[0].access.put(name + descriptor, access);
+					return null;
+				}
+			}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading " + entry.getName() + " from " + jar.getName(), e);
+		}
+
+		return out[0];
+	}
+
+	private static String[] inherit(Node node, MethodMapping method, Remapper yarnToMCP) {
+		String[] params = method.getYarnParameters();
+		List<Integer> missing = new ArrayList<>();
+
+		Type[] args = Type.getArgumentTypes(method.yarnDesc);
+		for (int i = 0, slot = 1; i < args.length; slot += args[i++].getSize()) {
+			if (params == null || slot >= params.length || params[slot] == null) missing.add(slot);
+		}
+		if (missing.isEmpty()) return null;
+
+		String[] out = null;
+		String mcpKey = method.mcp + yarnToMCP.mapMethodDesc(method.yarnDesc);
+
+		Set<Node> seen = new HashSet<>();
+		Queue<Node> queue = new ArrayDeque<>(node.parents);
+		//Breadth first so the nearest overridden method's names win, not stopping at the first one as it might only have some names
+		while (!queue.isEmpty() && !missing.isEmpty()) {
+			Node parent = queue.poll();
+			if (!seen.add(parent)) continue;
+
+			MethodMapping overridden = parent.mapping.getMethod(method.yarn, method.yarnDesc);
+			String[] parentParams;
+			if (overridden != null && !overridden.invalid && (parentParams = overridden.getYarnParameters()) != null && isOverridable(parent, parent.access.get(mcpKey), node)) {
+				for (int i = missing.size() - 1; i >= 0; i--) {
+					int slot = missing.get(i);
+
+					if (slot < parentParams.length && parentParams[slot] != null) {
+						if (out == null) out = params == null ? new String[slot + 1] : params.clone();
+						if (out.length <= slot) out = Arrays.copyOf(out, slot + 1);
+
+						out[slot] = parentParams[slot];
+						missing.remove(i);
+					}
+				}
+			}
+
+			queue.addAll(parent.parents);
+		}
+
+		return out;
+	}
+
+	private static boolean isOverridable(Node owner, Integer access, Node by) {
+		if (access == null || (access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC)) != 0) return false;
+		if ((access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED)) != 0) return true;
+
+		//Package-private methods are only overridden from within the same package
+		return packageOf(owner.name).equals(packageOf(by.name));
+	}
+
+	private static String packageOf(String name) {
+		int split = name.lastIndexOf('/');
+		return split > 0 ? name.substring(0, split) : "";
+	}
+}
@@ -0,0 +1,58 @@
+package mappings;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//Only holds strings weakly, so once every table using them is gone (as in long running watch or query modes) they can be collected too
+public class StringPool {
+	//Striped so the parallel readers don't all queue up on a single lock
+	private static final int STRIPES = 64;
+	private static final List<Map<String, WeakReference<String>>> POOL = new ArrayList<>(STRIPES);
+	static {
+		for (int i = 0; i < STRIPES; i++) POOL.add(new WeakHashMap<>());
+	}
+	private static final LongAdder LOOKUPS = new LongAdder();
+	private static final LongAdder HITS = new LongAdder();
+	private static final LongAdder SAVED_CHARS = new LongAdder();
+
+	public static String intern(String text) {
+		if (text == null) return null;
+		LOOKUPS.increment();
+
+		Map<String, WeakReference<String>> stripe = POOL.get((text.hashCode() & 0x7FFFFFFF) % STRIPES);
+		String existing;
+		synchronized (stripe) {
+			WeakReference<String> reference = stripe.get(text);
+
+			if (reference == null || (existing = reference.get()) == null) {
+				stripe.put(text, new WeakReference<>(text));
+				return text;
+			}
+		}
+
+		if (existing != text) {
+			HITS.increment();
+			SAVED_CHARS.add(text.length());
+		}
+		return existing;
+	}
+
+	public static String stats() {
+		long savedChars = SAVED_CHARS.sum();
+		//Assume the worst case of UTF-16 strings, plus roughly 40 bytes of String and array headers
+		long savedBytes = 2 * savedChars + 40 * HITS.sum();
+
+		int size = 0;
+		for (Map<String, WeakReference<String>> stripe : POOL) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+
+		return size + " unique strings from " + LOOKUPS.sum() + " lookups, " + HITS.sum() + " duplicates dropped (~" + (savedBytes >> 10) + "KB)";
+	}
+}
@@ -0,0 +1,71 @@
+package mappings;
+
+import net.fabricmc.tinyremapper.IMappingProvider;
+import net.fabricmc.tinyremapper.IMappingProvider.Member;
+import net.fabricmc.tinyremapper.asm.commons.Remapper;
+
+import mappings.MappingReader.ClassMapping;
+import mappings.MappingReader.DescriptedMapping;
+import mappings.MappingReader.MethodMapping;
+
+//Feeds a table straight to anything taking an IMappingProvider, rather than it having to be written out then parsed back in
+public class TableMappingProvider implements IMappingProvider {
+	private final ClassTable table;
+	private final Namespace from, to;
+
+	public TableMappingProvider(ClassTable table, Namespace from, Namespace to) {
+		this.table = table;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	public void load(MappingAcceptor out) {
+		Remapper descRemapper = table.remapper(Namespace.YARN, from);
+
+		for (ClassMapping classMapping : table) {
+			if (classMapping.invalid) continue;
+
+			String owner = ClassTable.nameOf(from, classMapping);
+			String mapped = ClassTable.nameOf(to, classMapping);
+			if (owner == null) continue;
+			if (mapped != null) out.acceptClass(owner, mapped);
+
+			for (MethodMapping methodMapping : classMapping.getMethods()) {
+				if (methodMapping.invalid) continue;
+
+				String name = nameOf(from, methodMapping);
+				if (name == null) continue;
+				Member method = new Member(owner, name, descRemapper.mapMethodDesc(methodMapping.yarnDesc));
+
+				if ((mapped = nameOf(to, methodMapping)) != null) out.acceptMethod(method, mapped);
+
+				for (int slot = 0, slots = methodMapping.getParameterSlots(); slot < slots; slot++) {
+					String parameter = methodMapping.getParameter(to, slot);
+					if (parameter != null) out.acceptMethodArg(method, slot, parameter);
+				}
+
+				if (to == Namespace.YARN) {//Only Yarn has names for locals
+					for (int local = 0, locals = methodMapping.getLocalCount(); local < locals; local++) {
+						out.acceptMethodVar(method, methodMapping.getLocalIndex(local), methodMapping.getLocalStart(local),
+								methodMapping.getLocalTableIndex(local), methodMapping.getLocalName(local));
+					}
+				}
+			}
+
+			for (DescriptedMapping fieldMapping : classMapping.getFields()) {
+				String name;
+				if (fieldMapping.invalid || (name = nameOf(from, fieldMapping)) == null || (mapped = nameOf(to, fieldMapping)) == null) continue;
+
+				out.acceptField(new Member(owner, name, descRemapper.mapDesc(fieldMapping.yarnDesc)), mapped);
+			}
+		}
+	}
+
+	private static String nameOf(Namespace namespace, DescriptedMapping mapping) {
+		//Constructors are <init> in every namespace, even where MappingValidator has reported the merged names disagreeing
+		if ("<init>".equals(mapping.yarn)) return mapping.yarn;
+
+		return namespace == Namespace.MCP && mapping.mcp == null ? mapping.srg : namespace.get(mapping);
+	}
+}
@@ -0,0 +1,11 @@
+package mappings;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+//Everything kept between runs (and shared between checkouts) lives under the one directory in the user's home
+public class UserCache {
+	public static Path resolve(String name) {
+		return Paths.get(System.getProperty("user.home"), ".jeka", "cache", "forge-yarn", name);
+	}
+}
@@ -10,7 +10,43 @@ if not "%JEKA_JDK%" == "" set "JAVA_HOME=%JEKA_JDK%"
 if "%JAVA_HOME%" == "" set "JAVA_CMD=java"
 if not "%JAVA_HOME%" == "" set "JAVA_CMD=%JAVA_HOME%\bin\java"
 
-set "COMMAND="%JAVA_CMD%" %JEKA_OPTS% -cp "%~dp0jeka\wrapper\*" dev.jeka.core.wrapper.Booter "%~dp0." %*"
+@rem Use an AppCDS archive of the classes loaded by a previous run to cut down start up time, unless JEKA_CDS=false
+@rem The archive is made automatically on the first run (JDK 19+) or when it doesn't exist yet (JDK 13+)
+set "CDS_OPTS="
+if /i "%JEKA_CDS%" == "false" goto runJeka
+set "CDS_DIR=%~dp0jeka\.work\cds"
+set "CDS_VERSION_FILE=%CDS_DIR%\java-version"
+
+@rem Working the version out means starting a JVM, so only do it once for each java
+set "JAVA_FEATURE="
+set "CDS_JAVA="
+set "CDS_FEATURE="
+if exist "%CDS_VERSION_FILE%" (
+	< "%CDS_VERSION_FILE%" (
+		set /p CDS_JAVA=
+		set /p CDS_FEATURE=
+	)
+)
+if "%CDS_JAVA%" == "%JAVA_CMD%" set "JAVA_FEATURE=%CDS_FEATURE%"
+if not "%JAVA_FEATURE%" == "" goto cdsOptions
+
+for /f "tokens=2 delims==" %%v in ('""%JAVA_CMD%" -XshowSettings:properties -version 2^>^&1 ^| findstr /c:"java.specification.version""') do set "JAVA_FEATURE=%%v"
+if "%JAVA_FEATURE%" == "" goto runJeka
+set "JAVA_FEATURE=%JAVA_FEATURE: =%"
+if "%JAVA_FEATURE:~0,2%" == "1." set "JAVA_FEATURE=%JAVA_FEATURE:~2%"
+if not exist "%CDS_DIR%" mkdir "%CDS_DIR%" 2> nul
+> "%CDS_VERSION_FILE%" echo %JAVA_CMD%
+>> "%CDS_VERSION_FILE%" echo %JAVA_FEATURE%
+
+:cdsOptions
+set "CDS_ARCHIVE=%CDS_DIR%\jeka-%JAVA_FEATURE%.jsa"
+if %JAVA_FEATURE% GEQ 19 set "CDS_OPTS=-XX:SharedArchiveFile="%CDS_ARCHIVE%" -XX:+AutoCreateSharedArchive" & goto runJeka
+if %JAVA_FEATURE% LSS 13 goto runJeka
+if exist "%CDS_ARCHIVE%" set "CDS_OPTS=-XX:SharedArchiveFile="%CDS_ARCHIVE%" -Xshare:auto" & goto runJeka
+set "CDS_OPTS=-XX:ArchiveClassesAtExit="%CDS_ARCHIVE%""
+
+:runJeka
+set "COMMAND="%JAVA_CMD%" %JEKA_OPTS% %CDS_OPTS% -cp "%~dp0jeka\wrapper\*" dev.jeka.core.wrapper.Booter "%~dp0." %*"
 if not "%JEKA_ECHO_CMD%" == "" (
 	@echo on
 	echo %COMMAND%